@@ -0,0 +1,334 @@
+package ca.yorku.eecs;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * In-memory copy of the bipartite actor/movie ACTED_IN graph.
+ *
+ * Actor and movie ids are interned in an IdDictionary to dense int node
+ * ids that share one id space, so a BFS path alternates actor, movie,
+ * actor, ... exactly like the nodes(path) of a Cypher shortestPath. Edges
+ * are undirected and kept in compressed sparse row form (offsets +
+ * neighbours). Edges added after the last compaction live in small
+ * per-node delta arrays until there are enough of them to be worth folding
+ * back into the CSR arrays.
+ *
+ * Connected components are tracked alongside the edges, so two nodes with no
+ * path between them can be told apart without a search.
+ *
+ * The CSR arrays are plain int arrays, except in a graph loaded from a
+ * GraphSnapshot, which reads them straight from the memory-mapped file as
+ * IntBuffers until its first compaction moves them onto the heap.
+ *
+ * Readers must hold readLock() while walking the adjacency.
+ */
+public class ActorMovieGraph {
+
+	private static final int MIN_COMPACTION_EDGES = 4096;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final IdDictionary ids;
+	private final BitSet movies = new BitSet();
+	private int nodeCount;
+
+	// Compressed sparse row adjacency for nodes [0, csrNodes); null while
+	// the mapped buffers below are in use
+	private int[] offsets = new int[1];
+	private int[] neighbors = new int[0];
+	private IntBuffer mappedOffsets;
+	private IntBuffer mappedNeighbors;
+	private int csrNodes;
+
+	// Edges added since the last compaction
+	private int[][] delta = new int[1024][];
+	private int[] deltaSize = new int[1024];
+	private int deltaEdges;
+
+	private final ConnectedComponents components;
+
+	public ActorMovieGraph() {
+		ids = new IdDictionary();
+		components = new ConnectedComponents();
+	}
+
+	/*
+	 * A graph restored from a snapshot, with all edges in the given CSR
+	 * arrays
+	 */
+	ActorMovieGraph(IdDictionary nodeIds, BitSet movieNodes, IntBuffer csrOffsets, IntBuffer csrNeighbors,
+			ConnectedComponents components) {
+		this.ids = nodeIds;
+		this.components = components;
+		nodeCount = nodeIds.size();
+		int capacity = Math.max(1024, nodeCount);
+		delta = new int[capacity][];
+		deltaSize = new int[capacity];
+		movies.or(movieNodes);
+		offsets = null;
+		neighbors = null;
+		mappedOffsets = csrOffsets;
+		mappedNeighbors = csrNeighbors;
+		csrNodes = nodeCount;
+	}
+
+	public Lock readLock() {
+		return lock.readLock();
+	}
+
+	public Lock writeLock() {
+		return lock.writeLock();
+	}
+
+	/*
+	 * Interns an actor id and returns its node, creating it if needed
+	 */
+	public int addActor(String actorId) {
+		lock.writeLock().lock();
+		try {
+			return intern(actorId, false);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Interns a movie id and returns its node, creating it if needed
+	 */
+	public int addMovie(String movieId) {
+		lock.writeLock().lock();
+		try {
+			return intern(movieId, true);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Adds an ACTED_IN edge between two known nodes. Returns false if either
+	 * id has not been interned.
+	 */
+	public boolean addEdge(String actorId, String movieId) {
+		lock.writeLock().lock();
+		try {
+			int actor = ids.find(actorId);
+			int movie = ids.find(movieId);
+			if (actor < 0 || movie < 0) {
+				return false;
+			}
+			appendDelta(actor, movie);
+			appendDelta(movie, actor);
+			deltaEdges++;
+			components.union(actor, movie);
+			if (deltaEdges * 2 > Math.max(MIN_COMPACTION_EDGES, csrSlots() / 8)) {
+				compact(null, null, 0);
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Adds count edges (actors[i], movies[i]) in one pass, rebuilding the CSR
+	 * arrays once. Used when loading the graph from the database.
+	 */
+	public void addEdges(int[] actors, int[] movieNodes, int count) {
+		lock.writeLock().lock();
+		try {
+			compact(actors, movieNodes, count);
+			for (int i = 0; i < count; i++) {
+				components.union(actors[i], movieNodes[i]);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Returns the node for an actor or movie id, or -1 if it is unknown.
+	 * Allocates nothing.
+	 */
+	public int node(CharSequence id) {
+		lock.readLock().lock();
+		try {
+			return ids.find(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Decodes the external id of a node into a new String
+	 */
+	public String id(int node) {
+		return ids.get(node);
+	}
+
+	public boolean isMovie(int node) {
+		return movies.get(node);
+	}
+
+	public int size() {
+		return nodeCount;
+	}
+
+	/*
+	 * True if there is any path between the two nodes. Caller holds the read
+	 * lock.
+	 */
+	public boolean connected(int a, int b) {
+		return components.connected(a, b);
+	}
+
+	/*
+	 * Component count, size histogram and giant-component fraction
+	 */
+	public JSONObject componentStats() throws JSONException {
+		lock.readLock().lock();
+		try {
+			return components.stats();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int edgeCount() {
+		return csrSlots() / 2 + deltaEdges;
+	}
+
+	public int movieCount() {
+		return movies.cardinality();
+	}
+
+	ConnectedComponents components() {
+		return components;
+	}
+
+	IdDictionary ids() {
+		return ids;
+	}
+
+	/*
+	 * Neighbour access for traversals. For a node u, its neighbours are
+	 * csrNeighbor(e) for e in [csrStart(u), csrEnd(u)) followed by
+	 * deltaNeighbor(u, i) for i in [0, deltaDegree(u)).
+	 */
+	public int csrStart(int node) {
+		if (node >= csrNodes) {
+			return 0;
+		}
+		return offsets != null ? offsets[node] : mappedOffsets.get(node);
+	}
+
+	public int csrEnd(int node) {
+		if (node >= csrNodes) {
+			return 0;
+		}
+		return offsets != null ? offsets[node + 1] : mappedOffsets.get(node + 1);
+	}
+
+	public int csrNeighbor(int edge) {
+		return neighbors != null ? neighbors[edge] : mappedNeighbors.get(edge);
+	}
+
+	public int deltaDegree(int node) {
+		return deltaSize[node];
+	}
+
+	public int deltaNeighbor(int node, int i) {
+		return delta[node][i];
+	}
+
+	private int intern(String id, boolean movie) {
+		int node = ids.add(id);
+		if (node < nodeCount) {
+			return node;
+		}
+		nodeCount++;
+		if (node == delta.length) {
+			int capacity = delta.length * 2;
+			delta = Arrays.copyOf(delta, capacity);
+			deltaSize = Arrays.copyOf(deltaSize, capacity);
+		}
+		if (movie) {
+			movies.set(node);
+		}
+		components.add(node);
+		return node;
+	}
+
+	// Two per edge, one in each direction
+	private int csrSlots() {
+		return neighbors != null ? neighbors.length : mappedNeighbors.limit();
+	}
+
+	private void appendDelta(int from, int to) {
+		int[] list = delta[from];
+		int size = deltaSize[from];
+		if (list == null) {
+			list = delta[from] = new int[2];
+		} else if (size == list.length) {
+			list = delta[from] = Arrays.copyOf(list, size * 2);
+		}
+		list[size] = to;
+		deltaSize[from] = size + 1;
+	}
+
+	/*
+	 * Folds the delta edges, plus any extra edges passed in, into freshly
+	 * built CSR arrays covering every node
+	 */
+	private void compact(int[] extraActors, int[] extraMovies, int extraCount) {
+		int n = nodeCount;
+		int[] newOffsets = new int[n + 1];
+
+		for (int u = 0; u < n; u++) {
+			newOffsets[u + 1] = (csrEnd(u) - csrStart(u)) + deltaSize[u];
+		}
+		for (int i = 0; i < extraCount; i++) {
+			newOffsets[extraActors[i] + 1]++;
+			newOffsets[extraMovies[i] + 1]++;
+		}
+		for (int u = 0; u < n; u++) {
+			newOffsets[u + 1] += newOffsets[u];
+		}
+
+		int[] newNeighbors = new int[newOffsets[n]];
+		int[] cursor = Arrays.copyOf(newOffsets, n);
+		for (int u = 0; u < n; u++) {
+			int start = csrStart(u);
+			int length = csrEnd(u) - start;
+			if (neighbors != null) {
+				System.arraycopy(neighbors, start, newNeighbors, cursor[u], length);
+			} else {
+				mappedNeighbors.get(start, newNeighbors, cursor[u], length);
+			}
+			cursor[u] += length;
+			if (deltaSize[u] > 0) {
+				System.arraycopy(delta[u], 0, newNeighbors, cursor[u], deltaSize[u]);
+				cursor[u] += deltaSize[u];
+				delta[u] = null;
+				deltaSize[u] = 0;
+			}
+		}
+		for (int i = 0; i < extraCount; i++) {
+			newNeighbors[cursor[extraActors[i]]++] = extraMovies[i];
+			newNeighbors[cursor[extraMovies[i]]++] = extraActors[i];
+		}
+
+		offsets = newOffsets;
+		neighbors = newNeighbors;
+		mappedOffsets = null;
+		mappedNeighbors = null;
+		csrNodes = n;
+		deltaEdges = 0;
+	}
+}
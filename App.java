@@ -1,19 +1,61 @@
 package ca.yorku.eecs;
 
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 import com.sun.net.httpserver.HttpServer;
 
 public class App {
 	static int PORT = 8080;
 
 	public static void main(String[] args) throws IOException {
-		HttpServer server = HttpServer.create(new InetSocketAddress("0.0.0.0", PORT), 0);
-		// TODO: two lines of code are expected to be added here
-		// please refer to the HTML server example
+		if (args.length > 0 && args[0].equals("import")) {
+			importFiles(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		// TCP accept queue, separate from the server.backlog admission limit
+		HttpServer server = HttpServer.create(new InetSocketAddress("0.0.0.0", PORT),
+				Settings.getInt("server.acceptBacklog", 0));
+		ServerExecutor executor = ServerExecutor.fromSettings();
+		server.setExecutor(executor);
 		Utils utils = new Utils();
+		utils.setUp(); // connect and load the in-memory graph before serving requests
 		server.createContext("/api/v1/", utils::handle);
 		server.start();
-		System.out.printf("Server started on port %d...\n", PORT);
+		Log.info("Server started on port " + PORT + " (" + executor + ")");
+	}
+
+	/*
+	 * Offline loader: App import name.basics.tsv.gz title.basics.tsv.gz title.principals.tsv.gz
+	 * Files are imported in the order given, so actors and movies must come
+	 * before the principals file that links them.
+	 */
+	private static void importFiles(String[] files) throws IOException {
+		if (files.length == 0) {
+			System.out.println("Usage: import <file> [<file> ...]");
+			return;
+		}
+
+		BulkImporter importer = new BulkImporter(Utils.connect(), Settings.getInt("import.batchSize", 10000));
+		for (String file : files) {
+			try (InputStream in = file.endsWith(".gz") ? new GZIPInputStream(new FileInputStream(file), 1 << 16)
+					: new FileInputStream(file)) {
+				System.out.println(file + " -> " + importer.importStream(in));
+			}
+		}
+
+		// the graph snapshot no longer matches Neo4j, so the server must reload it
+		String snapshot = Settings.get("bacon.snapshot", "");
+		if (!snapshot.isEmpty()) {
+			Files.deleteIfExists(Paths.get(snapshot));
+			Files.deleteIfExists(Paths.get(snapshot + ".wal"));
+		}
+		System.exit(0);
 	}
 }
@@ -0,0 +1,57 @@
+package ca.yorku.eecs;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResultCursor;
+import org.neo4j.driver.v1.TransactionConfig;
+import org.neo4j.driver.v1.Value;
+
+/*
+ * Runs read statements for one request on the driver's async API
+ * (readTransactionAsync / runAsync), so no thread waits while Neo4j works.
+ *
+ * Each statement gets its own session, closed once its records are in. The
+ * statements are counted against the request passed in, since the results
+ * arrive on driver threads where the Metrics ThreadLocal does not apply.
+ */
+public class AsyncQueries {
+
+	private final Driver driver;
+	private final Metrics metrics;
+	private final Metrics.Request request;
+
+	/*
+	 * driver must not be the RequestSessions wrapper: its sessions are closed
+	 * when handle() returns, long before an async statement completes
+	 */
+	public AsyncQueries(Driver driver, Metrics metrics, Metrics.Request request) {
+		this.driver = driver;
+		this.metrics = metrics;
+		this.request = request;
+	}
+
+	/*
+	 * Runs statement in a read transaction and completes with all of its
+	 * records
+	 */
+	public CompletionStage<List<Record>> read(String statement, Value params, TransactionConfig config) {
+		long start = System.nanoTime();
+		Session session = driver.session(AccessMode.READ);
+		return session
+				.readTransactionAsync(tx -> tx.runAsync(statement, params).thenCompose(StatementResultCursor::listAsync),
+						config)
+				.whenComplete((records, error) -> {
+					metrics.recordQuery(request, System.nanoTime() - start);
+					session.closeAsync();
+				});
+	}
+
+	public CompletionStage<List<Record>> read(String statement, Value params) {
+		return read(statement, params, TransactionConfig.empty());
+	}
+}
@@ -0,0 +1,71 @@
+package ca.yorku.eecs;
+
+import java.util.List;
+
+/*
+ * Backend used by computeBaconNumber / computeBaconPath to find shortest
+ * ACTED_IN paths between two actors. Implementations are told about writes so
+ * they can keep any in-process state in step with the database.
+ */
+public interface BaconEngine {
+
+	// baconNumber result when there is no path at all
+	int NOT_CONNECTED = -1;
+
+	// baconNumbers entry for an id that is not a known actor
+	int NOT_FOUND = -2;
+
+	// bounded baconNumber result when there is no path of at most maxDegrees
+	// but the actors may still be connected further out
+	int BEYOND_BOUND = -3;
+
+	/*
+	 * Returns the Bacon number (number of shared movies hopped) between the two
+	 * actors, or -1 if they are not connected
+	 */
+	int baconNumber(String actorId, String sourceId);
+
+	/*
+	 * Returns the alternating actor/movie ids from actorId to sourceId, or null
+	 * if the actors are not connected
+	 */
+	List<String> baconPath(String actorId, String sourceId);
+
+	/*
+	 * Returns the Bacon number if it is at most maxDegrees, NOT_CONNECTED if
+	 * the actors are known not to be connected, or BEYOND_BOUND
+	 */
+	int baconNumber(String actorId, String sourceId, int maxDegrees);
+
+	/*
+	 * Returns the path from actorId to sourceId if it is at most maxDegrees
+	 * long, otherwise null
+	 */
+	List<String> baconPath(String actorId, String sourceId, int maxDegrees);
+
+	/*
+	 * True if two existing actors are known not to be connected, to tell a
+	 * bounded miss apart from a path longer than maxDegrees. False if they are
+	 * connected or the engine cannot tell cheaply.
+	 */
+	boolean notConnected(String actorId, String sourceId);
+
+	/*
+	 * Returns the Bacon number of each actor from sourceId in one pass, in the
+	 * order given, bounded like baconNumber(actorId, sourceId, maxDegrees):
+	 * NOT_CONNECTED, BEYOND_BOUND, or NOT_FOUND if there is no such actor
+	 */
+	int[] baconNumbers(List<String> actorIds, String sourceId, int maxDegrees);
+
+	/*
+	 * Returns the alternating actor/movie ids on a shortest path between two
+	 * arbitrary actors, or null if they are not connected
+	 */
+	List<String> shortestPath(String fromId, String toId);
+
+	void actorAdded(String actorId);
+
+	void movieAdded(String movieId);
+
+	void relationshipAdded(String actorId, String movieId);
+}
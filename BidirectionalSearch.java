@@ -0,0 +1,206 @@
+package ca.yorku.eecs;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Bidirectional BFS between two arbitrary nodes of an ActorMovieGraph.
+ *
+ * Both searches advance one whole level at a time and the side with the
+ * smaller frontier is always the one expanded. The search stops at the first
+ * node discovered by one side that the other side has already visited; with
+ * level-synchronous expansion that first meeting is a shortest path.
+ *
+ * Frontiers, parent pointers and visited marks live in a Workspace that is
+ * reused between searches. Visited marks are epoch stamps, so nothing has to
+ * be cleared between searches and the only allocation is the returned path.
+ *
+ * A workspace holds eight int arrays the size of the graph, so they are
+ * pooled rather than kept per thread: at most bacon.searchWorkspaces
+ * (default server.poolSize) exist, however many threads search, and a
+ * search waits for a free one. With server.executor=virtual there is a
+ * thread per request, and per-thread workspaces would grow with the number
+ * of requests in flight.
+ *
+ * Callers hold the graph's read lock.
+ */
+public class BidirectionalSearch {
+
+	private final ActorMovieGraph graph;
+	private final BlockingQueue<Workspace> workspaces;
+
+	public BidirectionalSearch(ActorMovieGraph graph) {
+		this(graph, Settings.getInt("bacon.searchWorkspaces", ServerExecutor.poolSize()));
+	}
+
+	public BidirectionalSearch(ActorMovieGraph graph, int maxWorkspaces) {
+		this.graph = graph;
+		this.workspaces = new ArrayBlockingQueue<>(Math.max(1, maxWorkspaces));
+		for (int i = 0; i < Math.max(1, maxWorkspaces); i++) {
+			workspaces.add(new Workspace()); // arrays are allocated on first use
+		}
+	}
+
+	/*
+	 * Returns the nodes on a shortest path from 'from' to 'to' (both
+	 * included), or null if they are not connected
+	 */
+	public int[] shortestPath(int from, int to) {
+		if (from == to) {
+			return new int[] { from };
+		}
+
+		Workspace w;
+		try {
+			w = workspaces.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for a search workspace", e);
+		}
+		try {
+			return search(w, from, to);
+		} finally {
+			workspaces.add(w);
+		}
+	}
+
+	private int[] search(Workspace w, int from, int to) {
+		w.reset(graph.size());
+		int epoch = w.epoch;
+
+		w.forwardMark[from] = epoch;
+		w.forwardParent[from] = from;
+		w.forwardFrontier[0] = from;
+		int forwardSize = 1;
+
+		w.backwardMark[to] = epoch;
+		w.backwardParent[to] = to;
+		w.backwardFrontier[0] = to;
+		int backwardSize = 1;
+
+		while (forwardSize > 0 && backwardSize > 0) {
+			if (forwardSize <= backwardSize) {
+				forwardSize = expand(w.forwardFrontier, forwardSize, w.forwardNext, w.forwardMark, w.forwardParent,
+						w.backwardMark, w, epoch);
+				if (w.meetNear >= 0) {
+					return join(w, w.meetNear, w.meetFar, from, to);
+				}
+				int[] swap = w.forwardFrontier;
+				w.forwardFrontier = w.forwardNext;
+				w.forwardNext = swap;
+			} else {
+				backwardSize = expand(w.backwardFrontier, backwardSize, w.backwardNext, w.backwardMark,
+						w.backwardParent, w.forwardMark, w, epoch);
+				if (w.meetNear >= 0) {
+					return join(w, w.meetFar, w.meetNear, from, to);
+				}
+				int[] swap = w.backwardFrontier;
+				w.backwardFrontier = w.backwardNext;
+				w.backwardNext = swap;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Expands one level of a frontier into next and returns the size of the
+	 * new level. On meeting the other side, records the edge (near, far) in
+	 * the workspace and stops early.
+	 */
+	private int expand(int[] frontier, int size, int[] next, int[] mark, int[] parent, int[] otherMark, Workspace w,
+			int epoch) {
+		int nextSize = 0;
+		for (int i = 0; i < size; i++) {
+			int u = frontier[i];
+			for (int e = graph.csrStart(u), end = graph.csrEnd(u); e < end; e++) {
+				int v = graph.csrNeighbor(e);
+				if (mark[v] != epoch) {
+					if (otherMark[v] == epoch) {
+						w.meetNear = u;
+						w.meetFar = v;
+						return nextSize;
+					}
+					mark[v] = epoch;
+					parent[v] = u;
+					next[nextSize++] = v;
+				}
+			}
+			for (int j = 0, end = graph.deltaDegree(u); j < end; j++) {
+				int v = graph.deltaNeighbor(u, j);
+				if (mark[v] != epoch) {
+					if (otherMark[v] == epoch) {
+						w.meetNear = u;
+						w.meetFar = v;
+						return nextSize;
+					}
+					mark[v] = epoch;
+					parent[v] = u;
+					next[nextSize++] = v;
+				}
+			}
+		}
+		return nextSize;
+	}
+
+	/*
+	 * Builds the path from -> ... -> forwardEnd -> backwardStart -> ... -> to
+	 */
+	private int[] join(Workspace w, int forwardEnd, int backwardStart, int from, int to) {
+		int forwardLength = 1;
+		for (int v = forwardEnd; v != from; v = w.forwardParent[v]) {
+			forwardLength++;
+		}
+		int backwardLength = 1;
+		for (int v = backwardStart; v != to; v = w.backwardParent[v]) {
+			backwardLength++;
+		}
+
+		int[] path = new int[forwardLength + backwardLength];
+		int i = forwardLength - 1;
+		for (int v = forwardEnd; i >= 0; v = w.forwardParent[v]) {
+			path[i--] = v;
+		}
+		i = forwardLength;
+		for (int v = backwardStart; i < path.length; v = w.backwardParent[v]) {
+			path[i++] = v;
+		}
+		return path;
+	}
+
+	private static final class Workspace {
+		int epoch;
+		int[] forwardMark = new int[0];
+		int[] backwardMark = new int[0];
+		int[] forwardParent = new int[0];
+		int[] backwardParent = new int[0];
+		int[] forwardFrontier = new int[0];
+		int[] forwardNext = new int[0];
+		int[] backwardFrontier = new int[0];
+		int[] backwardNext = new int[0];
+		int meetNear;
+		int meetFar;
+
+		void reset(int size) {
+			if (size > forwardMark.length) {
+				int capacity = Math.max(size, forwardMark.length * 3 / 2);
+				forwardMark = new int[capacity];
+				backwardMark = new int[capacity];
+				forwardParent = new int[capacity];
+				backwardParent = new int[capacity];
+				forwardFrontier = new int[capacity];
+				forwardNext = new int[capacity];
+				backwardFrontier = new int[capacity];
+				backwardNext = new int[capacity];
+				epoch = 0;
+			}
+			if (++epoch == Integer.MAX_VALUE) {
+				Arrays.fill(forwardMark, 0);
+				Arrays.fill(backwardMark, 0);
+				epoch = 1;
+			}
+			meetNear = -1;
+			meetFar = -1;
+		}
+	}
+}
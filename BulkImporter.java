@@ -0,0 +1,233 @@
+package ca.yorku.eecs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Session;
+
+import static org.neo4j.driver.v1.Values.parameters;
+
+/*
+ * Streams IMDb-style datasets into Neo4j in batched UNWIND transactions.
+ *
+ * The file type is recognised from its header row:
+ *   name.basics      nconst, primaryName           -> actor nodes
+ *   title.basics     tconst, primaryTitle          -> movie nodes
+ *   title.principals tconst, nconst, category      -> ACTED_IN (actor/actress rows)
+ * Files may be tab separated (as published by IMDb) or comma separated with
+ * double-quoted fields. IMDb's \N null marker and rows missing an id are
+ * skipped. Only one batch of rows is held in memory at a time.
+ *
+ * All writes use MERGE, so re-running an import is safe.
+ */
+public class BulkImporter {
+
+	private static final String NULL = "\\N";
+	private static final long PROGRESS_INTERVAL_MS = 5000;
+
+	private static final String ACTOR_BATCH = "UNWIND $rows AS row MERGE (a:actor {id: row.id}) ON CREATE SET a.name = row.name";
+	private static final String MOVIE_BATCH = "UNWIND $rows AS row MERGE (m:movie {id: row.id}) ON CREATE SET m.name = row.name";
+	private static final String RELATIONSHIP_BATCH = "UNWIND $rows AS row MATCH (a:actor {id: row.actor}), (m:movie {id: row.movie}) MERGE (a)-[:ACTED_IN]->(m)";
+
+	private final Driver driver;
+	private final int batchSize;
+
+	public BulkImporter(Driver driver, int batchSize) {
+		this.driver = driver;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/*
+	 * Result of one import, returned as the bulkImport response body
+	 */
+	public static class Stats {
+		public String type;
+		public long rows;
+		public long imported;
+		public long skipped;
+		public long millis;
+
+		public double rowsPerSecond() {
+			return millis == 0 ? rows : rows * 1000.0 / millis;
+		}
+
+		public JSONObject toJson() throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("type", type);
+			json.put("rows", rows);
+			json.put("imported", imported);
+			json.put("skipped", skipped);
+			json.put("millis", millis);
+			json.put("rowsPerSecond", Math.round(rowsPerSecond()));
+			return json;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d rows (%d imported, %d skipped) in %d ms, %.0f rows/sec", type, rows, imported,
+					skipped, millis, rowsPerSecond());
+		}
+	}
+
+	/*
+	 * Imports one file. Throws IllegalArgumentException if the header is not
+	 * one of the supported formats.
+	 */
+	public Stats importStream(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+		String header = reader.readLine();
+		if (header == null) {
+			throw new IllegalArgumentException("Empty import file");
+		}
+
+		char delimiter = header.indexOf('\t') >= 0 ? '\t' : ',';
+		List<String> columns = Arrays.asList(split(header, delimiter));
+
+		Stats stats = new Stats();
+		String statement;
+		int idColumn;
+		int nameColumn = -1;
+		int actorColumn = -1;
+		int categoryColumn = -1;
+
+		if (columns.contains("nconst") && columns.contains("primaryName")) {
+			stats.type = "actors";
+			statement = ACTOR_BATCH;
+			idColumn = columns.indexOf("nconst");
+			nameColumn = columns.indexOf("primaryName");
+		} else if (columns.contains("tconst") && columns.contains("primaryTitle")) {
+			stats.type = "movies";
+			statement = MOVIE_BATCH;
+			idColumn = columns.indexOf("tconst");
+			nameColumn = columns.indexOf("primaryTitle");
+		} else if (columns.contains("tconst") && columns.contains("nconst")) {
+			stats.type = "relationships";
+			statement = RELATIONSHIP_BATCH;
+			idColumn = columns.indexOf("tconst");
+			actorColumn = columns.indexOf("nconst");
+			categoryColumn = columns.indexOf("category");
+		} else {
+			throw new IllegalArgumentException("Unrecognised import header: " + header);
+		}
+
+		long start = System.currentTimeMillis();
+		long lastReport = start;
+		List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+		String line;
+
+		while ((line = reader.readLine()) != null) {
+			if (line.isEmpty()) {
+				continue;
+			}
+			stats.rows++;
+			String[] fields = split(line, delimiter);
+			Map<String, Object> row = new HashMap<>(4);
+
+			if (actorColumn >= 0) {
+				String movie = field(fields, idColumn);
+				String actor = field(fields, actorColumn);
+				String category = field(fields, categoryColumn);
+				if (movie == null || actor == null
+						|| (category != null && !category.equals("actor") && !category.equals("actress"))) {
+					stats.skipped++;
+					continue;
+				}
+				row.put("movie", movie);
+				row.put("actor", actor);
+			} else {
+				String id = field(fields, idColumn);
+				if (id == null) {
+					stats.skipped++;
+					continue;
+				}
+				String name = field(fields, nameColumn);
+				row.put("id", id);
+				row.put("name", name == null ? "" : name);
+			}
+
+			batch.add(row);
+			if (batch.size() == batchSize) {
+				stats.imported += write(statement, batch);
+				long now = System.currentTimeMillis();
+				if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+					Log.info(String.format("Importing %s: %d rows, %.0f rows/sec", stats.type, stats.rows,
+							stats.rows * 1000.0 / Math.max(1, now - start)));
+					lastReport = now;
+				}
+			}
+		}
+		stats.imported += write(statement, batch);
+		stats.millis = System.currentTimeMillis() - start;
+
+		Log.info("Imported " + stats);
+		return stats;
+	}
+
+	private int write(String statement, List<Map<String, Object>> batch) {
+		if (batch.isEmpty()) {
+			return 0;
+		}
+		int size = batch.size();
+		List<Map<String, Object>> rows = new ArrayList<>(batch);
+		try (Session session = driver.session()) {
+			session.writeTransaction(tx -> tx.run(statement, parameters("rows", rows)).consume());
+		}
+		batch.clear();
+		return size;
+	}
+
+	private static String field(String[] fields, int column) {
+		if (column < 0 || column >= fields.length) {
+			return null;
+		}
+		String value = fields[column];
+		return (value.isEmpty() || value.equals(NULL)) ? null : value;
+	}
+
+	/*
+	 * Splits one line. Tab separated lines are split as-is; comma separated
+	 * lines honour double quotes and "" escapes.
+	 */
+	static String[] split(String line, char delimiter) {
+		if (delimiter == '\t') {
+			return line.split("\t", -1);
+		}
+
+		List<String> fields = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					current.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					current.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == delimiter) {
+				fields.add(current.toString());
+				current.setLength(0);
+			} else {
+				current.append(c);
+			}
+		}
+		fields.add(current.toString());
+		return fields.toArray(new String[0]);
+	}
+}
@@ -0,0 +1,151 @@
+package ca.yorku.eecs;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * Union-find labelling of the connected components of the actor/movie graph,
+ * over the same dense node ids as ActorMovieGraph.
+ *
+ * Unions are by size, so a find walks at most log2(n) parent links without
+ * any path compression. That keeps find() read-only and safe under the
+ * graph's read lock; paths are only compressed inside union(), which runs
+ * under the write lock.
+ */
+public class ConnectedComponents {
+
+	private int[] parent = new int[1024];
+	private int[] size = new int[1024];
+	private int nodeCount;
+	private int componentCount;
+
+	public ConnectedComponents() {
+	}
+
+	/*
+	 * Restores a labelling saved by GraphSnapshot: the root and component
+	 * size of every node
+	 */
+	ConnectedComponents(int[] roots, int[] sizes) {
+		nodeCount = roots.length;
+		parent = Arrays.copyOf(roots, Math.max(1024, nodeCount));
+		size = Arrays.copyOf(sizes, parent.length);
+		for (int node = 0; node < nodeCount; node++) {
+			if (parent[node] == node) {
+				componentCount++;
+			}
+		}
+	}
+
+	/*
+	 * Adds the next node as a component of its own. Nodes must be added in
+	 * increasing order starting at 0.
+	 */
+	public void add(int node) {
+		if (node == parent.length) {
+			parent = Arrays.copyOf(parent, node * 2);
+			size = Arrays.copyOf(size, node * 2);
+		}
+		parent[node] = node;
+		size[node] = 1;
+		nodeCount = node + 1;
+		componentCount++;
+	}
+
+	/*
+	 * Returns the representative node of the component containing node
+	 */
+	public int find(int node) {
+		while (parent[node] != node) {
+			node = parent[node];
+		}
+		return node;
+	}
+
+	public boolean connected(int a, int b) {
+		return find(a) == find(b);
+	}
+
+	/*
+	 * Merges the components of a and b, returning false if they already were
+	 * one component
+	 */
+	public boolean union(int a, int b) {
+		int rootA = compress(a);
+		int rootB = compress(b);
+		if (rootA == rootB) {
+			return false;
+		}
+		if (size[rootA] < size[rootB]) {
+			int swap = rootA;
+			rootA = rootB;
+			rootB = swap;
+		}
+		parent[rootB] = rootA;
+		size[rootA] += size[rootB];
+		componentCount--;
+		return true;
+	}
+
+	/*
+	 * Number of nodes in the component containing node
+	 */
+	public int componentSize(int node) {
+		return size[find(node)];
+	}
+
+	public int count() {
+		return componentCount;
+	}
+
+	/*
+	 * Component count, the share of all nodes in the largest component, and
+	 * a histogram of component sizes in power-of-two buckets
+	 * [minSize, maxSize]
+	 */
+	public JSONObject stats() throws JSONException {
+		int[] buckets = new int[32];
+		int largest = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			if (parent[node] == node) {
+				buckets[31 - Integer.numberOfLeadingZeros(size[node])]++;
+				largest = Math.max(largest, size[node]);
+			}
+		}
+
+		JSONArray histogram = new JSONArray();
+		for (int i = 0; i < buckets.length; i++) {
+			if (buckets[i] > 0) {
+				JSONObject bucket = new JSONObject();
+				bucket.put("minSize", 1L << i);
+				bucket.put("maxSize", (1L << (i + 1)) - 1);
+				bucket.put("components", buckets[i]);
+				histogram.put(bucket);
+			}
+		}
+
+		JSONObject json = new JSONObject();
+		json.put("nodes", nodeCount);
+		json.put("components", componentCount);
+		json.put("giantComponentSize", largest);
+		json.put("giantComponentFraction", nodeCount == 0 ? 0.0 : (double) largest / nodeCount);
+		json.put("sizeHistogram", histogram);
+		return json;
+	}
+
+	/*
+	 * find() that also points every node on the way straight at the root
+	 */
+	private int compress(int node) {
+		int root = find(node);
+		while (parent[node] != root) {
+			int next = parent[node];
+			parent[node] = root;
+			node = next;
+		}
+		return root;
+	}
+}
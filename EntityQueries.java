@@ -0,0 +1,182 @@
+package ca.yorku.eecs;
+
+import static org.neo4j.driver.v1.Values.parameters;
+
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.StatementRunner;
+
+/*
+ * Single-round-trip reads behind getActor / getMovie. Each entity is fetched
+ * with one statement that returns the node's properties and its collect()ed
+ * neighbours, instead of an existence check plus one query per field.
+ */
+public final class EntityQueries {
+
+	public static final String ACTOR = "MATCH (a:actor {id: $id})\n"
+			+ "OPTIONAL MATCH (a)-[:ACTED_IN]->(movie)\n"
+			+ "RETURN a.name AS name, a.nationality AS nationality, collect(movie.id) AS movies";
+
+	public static final String MOVIE = "MATCH (m:movie {id: $id})\n"
+			+ "OPTIONAL MATCH (m)<-[:ACTED_IN]-(actor)\n"
+			+ "RETURN m.name AS name, collect(actor.id) AS actors";
+
+	// batch/getActor: one row per requested index that names an actor
+	private static final String ACTORS = "UNWIND range(0, size($ids) - 1) AS i\n"
+			+ "MATCH (a:actor {id: $ids[i]})\n"
+			+ "OPTIONAL MATCH (a)-[:ACTED_IN]->(movie)\n"
+			+ "RETURN i, a.name AS name, a.nationality AS nationality, collect(movie.id) AS movies";
+
+	// getActor / getMovie with format=ndjson: one row per neighbour id, or a
+	// single null row when the entity exists but has none
+	public static final String ACTOR_MOVIE_IDS = "MATCH (a:actor {id: $id})\n"
+			+ "OPTIONAL MATCH (a)-[:ACTED_IN]->(movie)\n"
+			+ "RETURN movie.id AS id ORDER BY id";
+
+	public static final String MOVIE_ACTOR_IDS = "MATCH (m:movie {id: $id})\n"
+			+ "OPTIONAL MATCH (m)<-[:ACTED_IN]-(actor)\n"
+			+ "RETURN actor.id AS id ORDER BY id";
+
+	// Keyset pages: neighbours ordered by id after $cursor, one more than
+	// $limit so the caller can tell whether there is a next page
+	private static final String ACTOR_PAGE = "MATCH (a:actor {id: $id})\n"
+			+ "OPTIONAL MATCH (a)-[:ACTED_IN]->(movie) WHERE movie.id > $cursor\n"
+			+ "WITH a, movie ORDER BY movie.id LIMIT $limit\n"
+			+ "RETURN a.name AS name, a.nationality AS nationality, collect(movie.id) AS movies";
+
+	private static final String MOVIE_PAGE = "MATCH (m:movie {id: $id})\n"
+			+ "OPTIONAL MATCH (m)<-[:ACTED_IN]-(actor) WHERE actor.id > $cursor\n"
+			+ "WITH m, actor ORDER BY actor.id LIMIT $limit\n"
+			+ "RETURN m.name AS name, collect(actor.id) AS actors";
+
+	private EntityQueries() {
+	}
+
+	/*
+	 * Returns the getActor response for actorId, or null if there is no such
+	 * actor
+	 */
+	public static JSONObject actor(StatementRunner runner, String actorId) throws JSONException {
+		StatementResult result = runner.run(ACTOR, parameters("id", actorId));
+		if (!result.hasNext()) {
+			return null;
+		}
+		return actorJson(actorId, result.next());
+	}
+
+	/*
+	 * Returns the getActor response for each id in one statement, in the
+	 * order given, with null for ids that are not actors
+	 */
+	public static JSONObject[] actors(StatementRunner runner, List<String> actorIds) throws JSONException {
+		JSONObject[] actors = new JSONObject[actorIds.size()];
+		StatementResult result = runner.run(ACTORS, parameters("ids", actorIds));
+		while (result.hasNext()) {
+			Record record = result.next();
+			int i = record.get("i").asInt();
+			actors[i] = actorJson(actorIds.get(i), record);
+		}
+		return actors;
+	}
+
+	/*
+	 * The getActor response built from a row of ACTOR
+	 */
+	static JSONObject actorJson(String actorId, Record record) throws JSONException {
+		List<String> movies = record.get("movies").asList(value -> value.asString());
+		String actorNationality = record.get("nationality").asString();
+
+		JSONObject jsonObj = new JSONObject();
+		jsonObj.put("actorId", actorId);
+		jsonObj.put("name", record.get("name").asString());
+		jsonObj.put("movies", new JSONArray(movies));
+		if (actorNationality != null && !actorNationality.trim().isEmpty()) {
+			jsonObj.put("nationality", actorNationality);
+		}
+		return jsonObj;
+	}
+
+	/*
+	 * Returns the getMovie response for movieId, or null if there is no such
+	 * movie
+	 */
+	public static JSONObject movie(StatementRunner runner, String movieId) throws JSONException {
+		StatementResult result = runner.run(MOVIE, parameters("id", movieId));
+		if (!result.hasNext()) {
+			return null;
+		}
+		return movieJson(movieId, result.next());
+	}
+
+	/*
+	 * The getMovie response built from a row of MOVIE
+	 */
+	static JSONObject movieJson(String movieId, Record record) throws JSONException {
+		List<String> actors = record.get("actors").asList(value -> value.asString());
+
+		JSONObject jsonObj = new JSONObject();
+		jsonObj.put("movieId", movieId);
+		jsonObj.put("name", record.get("name").asString());
+		jsonObj.put("actors", new JSONArray(actors));
+		return jsonObj;
+	}
+
+	/*
+	 * Returns one page of the getActor response, with at most limit movies
+	 * whose ids sort after cursor and a "nextCursor" when more remain, or
+	 * null if there is no such actor
+	 */
+	public static JSONObject actorPage(StatementRunner runner, String actorId, String cursor, int limit)
+			throws JSONException {
+		StatementResult result = runner.run(ACTOR_PAGE,
+				parameters("id", actorId, "cursor", cursor, "limit", limit + 1));
+		if (!result.hasNext()) {
+			return null;
+		}
+		Record record = result.next();
+		String actorNationality = record.get("nationality").asString();
+
+		JSONObject jsonObj = new JSONObject();
+		jsonObj.put("actorId", actorId);
+		jsonObj.put("name", record.get("name").asString());
+		putPage(jsonObj, "movies", record.get("movies").asList(value -> value.asString()), limit);
+		if (actorNationality != null && !actorNationality.trim().isEmpty()) {
+			jsonObj.put("nationality", actorNationality);
+		}
+		return jsonObj;
+	}
+
+	/*
+	 * Returns one page of the getMovie response, with at most limit actors
+	 * whose ids sort after cursor and a "nextCursor" when more remain, or
+	 * null if there is no such movie
+	 */
+	public static JSONObject moviePage(StatementRunner runner, String movieId, String cursor, int limit)
+			throws JSONException {
+		StatementResult result = runner.run(MOVIE_PAGE,
+				parameters("id", movieId, "cursor", cursor, "limit", limit + 1));
+		if (!result.hasNext()) {
+			return null;
+		}
+		Record record = result.next();
+
+		JSONObject jsonObj = new JSONObject();
+		jsonObj.put("movieId", movieId);
+		jsonObj.put("name", record.get("name").asString());
+		putPage(jsonObj, "actors", record.get("actors").asList(value -> value.asString()), limit);
+		return jsonObj;
+	}
+
+	private static void putPage(JSONObject jsonObj, String key, List<String> ids, int limit) throws JSONException {
+		if (ids.size() > limit) {
+			ids = ids.subList(0, limit);
+			jsonObj.put("nextCursor", ids.get(limit - 1));
+		}
+		jsonObj.put(key, new JSONArray(ids));
+	}
+}
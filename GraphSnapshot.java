@@ -0,0 +1,316 @@
+package ca.yorku.eecs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/*
+ * Versioned binary snapshot of the in-memory graph, so a restart does not
+ * have to read every node and edge back out of Neo4j.
+ *
+ * Layout (little-endian, every section 8-byte aligned):
+ *
+ *   header    magic "BACNSNAP", version, node count, neighbour count,
+ *             root node (-1 if none), generation, then the file offset of
+ *             each section and the total file length
+ *   ids       int[n + 1] byte offsets into the UTF-8 id bytes, then the bytes
+ *   movies    long[] words of the movie-node bitset
+ *   csr       int[n + 1] offsets and int[] neighbours; delta edges are
+ *             folded in while writing
+ *   labels    int[n] component root and int[n] component size per node
+ *   bacon     int[n] hop distance and int[n] parent per node in the root
+ *             actor's BFS tree, present when root node >= 0
+ *
+ * write() fills a temporary file, forces it to disk and renames it over the
+ * old snapshot, so a reader never sees a partial file. read() maps each
+ * section with FileChannel.map: the CSR arrays stay mapped and fault in as
+ * traversals touch them, while the id table, component labels and Bacon
+ * tree, which are mutable or need hashing, are copied into memory; the id
+ * bytes go straight into the IdDictionary's off-heap arena without being
+ * decoded. A single section is limited to 2 GB by the size of a mapped
+ * buffer.
+ *
+ * Each snapshot gets a new generation number; the GraphWal started after it
+ * carries the same number, so a log left over from an older snapshot is
+ * never replayed onto a newer one.
+ */
+public final class GraphSnapshot {
+
+	private static final long MAGIC = 0x50414e534e434142L; // "BACNSNAP" read little-endian
+	private static final int VERSION = 1;
+
+	private static final int IDS = 0;
+	private static final int ID_BYTES = 1;
+	private static final int MOVIES = 2;
+	private static final int CSR_OFFSETS = 3;
+	private static final int CSR_NEIGHBORS = 4;
+	private static final int ROOTS = 5;
+	private static final int SIZES = 6;
+	private static final int DISTANCES = 7;
+	private static final int PARENTS = 8;
+	private static final int SECTIONS = 9;
+
+	// magic, version + node count, neighbour count, root node + padding, generation, sections, file length
+	private static final int HEADER_BYTES = 8 + 8 + 8 + 8 + 8 + SECTIONS * 8 + 8;
+
+	private GraphSnapshot() {
+	}
+
+	/*
+	 * A graph read back from a snapshot, with the root actor's BFS tree if
+	 * one was saved
+	 */
+	public static final class Loaded {
+		public final ActorMovieGraph graph;
+		public final ShortestPathTree rootTree;
+		public final long generation;
+
+		Loaded(ActorMovieGraph graph, ShortestPathTree rootTree, long generation) {
+			this.graph = graph;
+			this.rootTree = rootTree;
+			this.generation = generation;
+		}
+	}
+
+	/*
+	 * Writes graph, and rootTree if it is not null, to file and returns the
+	 * new snapshot's generation. Holds the graph's read lock throughout, so
+	 * writers wait for the snapshot. The data goes to a temp file of its own
+	 * next to file, which then replaces file atomically.
+	 */
+	public static long write(ActorMovieGraph graph, ShortestPathTree rootTree, Path file) throws IOException {
+		long generation = System.currentTimeMillis();
+		Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp");
+		try {
+			write(graph, rootTree, tmp, generation);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		return generation;
+	}
+
+	private static void write(ActorMovieGraph graph, ShortestPathTree rootTree, Path tmp, long generation)
+			throws IOException {
+		graph.readLock().lock();
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			int n = graph.size();
+			long[] sections = new long[SECTIONS];
+			Output out = new Output(channel, HEADER_BYTES);
+
+			IdDictionary ids = graph.ids();
+			sections[IDS] = out.align();
+			out.putInt(0);
+			for (int node = 0; node < n; node++) {
+				out.putInt(ids.end(node));
+			}
+			sections[ID_BYTES] = out.align();
+			out.putBytes(ids.bytes());
+
+			sections[MOVIES] = out.align();
+			BitSet movies = new BitSet(n);
+			for (int node = 0; node < n; node++) {
+				if (graph.isMovie(node)) {
+					movies.set(node);
+				}
+			}
+			long[] words = movies.toLongArray();
+			for (int i = 0; i < (n + 63) / 64; i++) {
+				out.putLong(i < words.length ? words[i] : 0L);
+			}
+
+			sections[CSR_OFFSETS] = out.align();
+			int edges = 0;
+			out.putInt(0);
+			for (int node = 0; node < n; node++) {
+				edges = Math.addExact(edges, graph.csrEnd(node) - graph.csrStart(node) + graph.deltaDegree(node));
+				out.putInt(edges);
+			}
+			sections[CSR_NEIGHBORS] = out.align();
+			for (int node = 0; node < n; node++) {
+				for (int e = graph.csrStart(node), end = graph.csrEnd(node); e < end; e++) {
+					out.putInt(graph.csrNeighbor(e));
+				}
+				for (int i = 0, end = graph.deltaDegree(node); i < end; i++) {
+					out.putInt(graph.deltaNeighbor(node, i));
+				}
+			}
+
+			ConnectedComponents components = graph.components();
+			sections[ROOTS] = out.align();
+			for (int node = 0; node < n; node++) {
+				out.putInt(components.find(node));
+			}
+			sections[SIZES] = out.align();
+			for (int node = 0; node < n; node++) {
+				out.putInt(components.componentSize(node));
+			}
+
+			int rootNode = rootTree == null ? -1 : rootTree.source();
+			if (rootTree != null) {
+				sections[DISTANCES] = out.align();
+				for (int node = 0; node < n; node++) {
+					out.putInt(rootTree.distance(node));
+				}
+				sections[PARENTS] = out.align();
+				for (int node = 0; node < n; node++) {
+					out.putInt(rootTree.parent(node));
+				}
+			}
+			long length = out.align();
+			out.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putLong(MAGIC).putInt(VERSION).putInt(n).putLong(edges).putInt(rootNode).putInt(0)
+					.putLong(generation);
+			for (long section : sections) {
+				header.putLong(section);
+			}
+			header.putLong(length);
+			header.flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.force(true);
+		} finally {
+			graph.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Maps a snapshot written by write(). Throws IOException if the file is
+	 * truncated, not a snapshot or from another format version.
+	 */
+	public static Loaded read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				throw new IOException(file + " is not a graph snapshot");
+			}
+			ByteBuffer header = map(channel, 0, HEADER_BYTES);
+			if (header.getLong() != MAGIC) {
+				throw new IOException(file + " is not a graph snapshot");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(file + " has snapshot version " + version + ", expected " + VERSION);
+			}
+			int n = header.getInt();
+			long edges = header.getLong();
+			int rootNode = header.getInt();
+			header.getInt(); // padding
+			long generation = header.getLong();
+			long[] sections = new long[SECTIONS];
+			for (int i = 0; i < SECTIONS; i++) {
+				sections[i] = header.getLong();
+			}
+			long length = header.getLong();
+			if (channel.size() != length) {
+				throw new IOException(file + " is " + channel.size() + " bytes, expected " + length);
+			}
+
+			IntBuffer idEnds = ints(channel, sections[IDS] + 4, n);
+			ByteBuffer idBytes = map(channel, sections[ID_BYTES], n == 0 ? 0 : idEnds.get(n - 1));
+			IdDictionary ids = new IdDictionary(idEnds, idBytes, n);
+
+			LongBuffer words = map(channel, sections[MOVIES], 8L * ((n + 63) / 64)).asLongBuffer();
+			BitSet movies = BitSet.valueOf(words);
+
+			IntBuffer offsets = ints(channel, sections[CSR_OFFSETS], n + 1);
+			IntBuffer neighbors = ints(channel, sections[CSR_NEIGHBORS], Math.toIntExact(edges));
+
+			ConnectedComponents components = new ConnectedComponents(heapInts(channel, sections[ROOTS], n),
+					heapInts(channel, sections[SIZES], n));
+			ActorMovieGraph graph = new ActorMovieGraph(ids, movies, offsets, neighbors, components);
+
+			ShortestPathTree rootTree = null;
+			if (rootNode >= 0) {
+				rootTree = ShortestPathTree.restore(rootNode, heapInts(channel, sections[DISTANCES], n),
+						heapInts(channel, sections[PARENTS], n));
+			}
+			return new Loaded(graph, rootTree, generation);
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long offset, long bytes) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static IntBuffer ints(FileChannel channel, long offset, int count) throws IOException {
+		return map(channel, offset, 4L * count).asIntBuffer();
+	}
+
+	private static int[] heapInts(FileChannel channel, long offset, int count) throws IOException {
+		int[] values = new int[count];
+		ints(channel, offset, count).get(values);
+		return values;
+	}
+
+	/*
+	 * Buffered little-endian writer over a FileChannel, starting at a given
+	 * file position
+	 */
+	private static final class Output {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+		private long position;
+
+		Output(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			ensure(8);
+			buffer.putLong(value);
+		}
+
+		void putBytes(ByteBuffer bytes) throws IOException {
+			while (bytes.hasRemaining()) {
+				ensure(1);
+				int chunk = Math.min(buffer.remaining(), bytes.remaining());
+				buffer.put(buffer.position(), bytes, bytes.position(), chunk);
+				buffer.position(buffer.position() + chunk);
+				bytes.position(bytes.position() + chunk);
+			}
+		}
+
+		/*
+		 * Pads to the next multiple of 8 and returns the file position there
+		 */
+		long align() throws IOException {
+			while ((position + buffer.position()) % 8 != 0) {
+				ensure(1);
+				buffer.put((byte) 0);
+			}
+			return position + buffer.position();
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			buffer.clear();
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package ca.yorku.eecs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/*
+ * Log of the graph mutations (actors, movies, ACTED_IN edges) made since the
+ * last GraphSnapshot, replayed on top of the snapshot at startup.
+ *
+ * It is not a write-ahead log: a record is appended only after its write has
+ * committed to Neo4j, so a crash in between loses the record.
+ * InMemoryBaconEngine.open catches that by comparing counts with Neo4j.
+ *
+ * The file starts with the generation of the snapshot it follows. Each
+ * record is an int payload length, the CRC32 of the payload, and the payload
+ * itself: a kind byte followed by each id as an int length and UTF-8 bytes.
+ * A record cut short by a crash fails its length or CRC check; replay stops
+ * there and the tail is truncated before new records are appended.
+ *
+ * Records reach the OS on every append; with bacon.walSync=true each one is
+ * also forced to disk.
+ */
+public class GraphWal implements Closeable {
+
+	public static final byte ACTOR = 'A';
+	public static final byte MOVIE = 'M';
+	public static final byte RELATIONSHIP = 'R';
+
+	private static final int HEADER_BYTES = 8;
+	private static final int MAX_RECORD_BYTES = 1 << 20;
+
+	private final FileChannel channel;
+	private final boolean sync = Boolean.parseBoolean(Settings.get("bacon.walSync", "false"));
+	private final ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+	private final CRC32 crc = new CRC32();
+
+	private GraphWal(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/*
+	 * Receives replayed records; second is null for ACTOR and MOVIE
+	 */
+	public interface Visitor {
+		void apply(byte kind, String first, String second);
+	}
+
+	/*
+	 * Opens the log at file for appending after the snapshot with the given
+	 * generation. A log that belongs to another generation is discarded; a
+	 * torn tail left by a crash is truncated.
+	 */
+	public static GraphWal open(Path file, long generation) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			long end = scan(channel, generation, null);
+			if (end < 0) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				header.putLong(generation).flip();
+				channel.truncate(0);
+				channel.write(header, 0);
+				channel.force(true);
+				end = HEADER_BYTES;
+			}
+			channel.truncate(end);
+			channel.position(end);
+			return new GraphWal(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Replays every intact record of the log at file if it follows the
+	 * snapshot with the given generation, and returns how many there were
+	 */
+	public static int replay(Path file, long generation, Visitor visitor) throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		int[] count = new int[1];
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			scan(channel, generation, (kind, first, second) -> {
+				visitor.apply(kind, first, second);
+				count[0]++;
+			});
+		}
+		return count[0];
+	}
+
+	public synchronized void append(byte kind, String first) throws IOException {
+		append(kind, first, null);
+	}
+
+	public synchronized void append(byte kind, String first, String second) throws IOException {
+		byte[] a = first.getBytes(StandardCharsets.UTF_8);
+		byte[] b = second == null ? null : second.getBytes(StandardCharsets.UTF_8);
+		int payload = 1 + 4 + a.length + (b == null ? 0 : 4 + b.length);
+		ByteBuffer record = payload + 8 <= buffer.capacity() ? buffer
+				: ByteBuffer.allocate(payload + 8).order(ByteOrder.LITTLE_ENDIAN);
+		record.clear();
+		record.putInt(payload).putInt(0).put(kind).putInt(a.length).put(a);
+		if (b != null) {
+			record.putInt(b.length).put(b);
+		}
+		crc.reset();
+		crc.update(record.array(), 8, payload);
+		record.putInt(4, (int) crc.getValue());
+		record.flip();
+		while (record.hasRemaining()) {
+			channel.write(record);
+		}
+		if (sync) {
+			channel.force(false);
+		}
+	}
+
+	/*
+	 * Starts the log over after a new snapshot
+	 */
+	public synchronized void reset(long generation) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(generation).flip();
+		channel.truncate(0);
+		channel.write(header, 0);
+		channel.position(HEADER_BYTES);
+		channel.force(true);
+	}
+
+	public synchronized long size() throws IOException {
+		return channel.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		channel.close();
+	}
+
+	/*
+	 * Reads records from the start of the log, passing them to visitor if it
+	 * is not null. Returns the offset just past the last intact record, or -1
+	 * if the log is empty or belongs to another generation.
+	 */
+	private static long scan(FileChannel channel, long generation, Visitor visitor) throws IOException {
+		long size = channel.size();
+		if (size < HEADER_BYTES) {
+			return -1;
+		}
+		ByteBuffer head = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		if (!readFully(channel, head, 0) || head.getLong(0) != generation) {
+			return -1;
+		}
+
+		CRC32 crc = new CRC32();
+		long position = HEADER_BYTES;
+		while (position + 8 <= size) {
+			head.clear();
+			readFully(channel, head, position);
+			int length = head.getInt(0);
+			int checksum = head.getInt(4);
+			if (length < 5 || length > MAX_RECORD_BYTES || position + 8 + length > size) {
+				break;
+			}
+			ByteBuffer payload = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, payload, position + 8);
+			crc.reset();
+			crc.update(payload.array(), 0, length);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			if (visitor != null) {
+				byte kind = payload.get(0);
+				payload.position(1);
+				String first = string(payload);
+				String second = payload.hasRemaining() ? string(payload) : null;
+				visitor.apply(kind, first, second);
+			}
+			position += 8 + length;
+		}
+		return position;
+	}
+
+	private static String string(ByteBuffer payload) {
+		int length = payload.getInt();
+		String value = new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8);
+		payload.position(payload.position() + length);
+		return value;
+	}
+
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,278 @@
+package ca.yorku.eecs;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Dictionary from external actor/movie ids ("nm0000102", "tt0087277") to
+ * dense ints 0, 1, 2, ... in the order they were added.
+ *
+ * The UTF-8 bytes of every id are appended to one direct ByteBuffer arena,
+ * off the Java heap, and the only per-id state on the heap is three ints:
+ * the id's end offset in the arena, its hash, and its slot in an
+ * open-addressed (linear probing) hash table. Against a HashMap<String,
+ * Integer> plus a String[] that saves the String, byte[], map entry and
+ * boxed Integer objects per id, none of which the GC has to trace any more.
+ *
+ * find() hashes and compares the UTF-8 encoding of a CharSequence char by
+ * char against the arena, so a lookup allocates nothing. get() decodes a new
+ * String and is meant for building responses, not for hot loops.
+ *
+ * The arena holds at most 2 GB of id bytes. Not thread-safe for writers;
+ * ActorMovieGraph calls add() under its write lock and find() under its
+ * read lock.
+ */
+public class IdDictionary {
+
+	private static final int FNV_OFFSET = 0x811c9dc5;
+	private static final int FNV_PRIME = 0x01000193;
+
+	private ByteBuffer arena;
+	private int[] ends;
+	private int[] hashes;
+	private int[] table; // id + 1 per slot, 0 when empty
+	private int count;
+
+	public IdDictionary() {
+		arena = ByteBuffer.allocateDirect(16 * 1024);
+		ends = new int[1024];
+		hashes = new int[1024];
+		table = new int[2048];
+	}
+
+	/*
+	 * Restores count ids from a GraphSnapshot: ends[i] is the end offset of
+	 * id i in bytes, which holds the ids' UTF-8 bytes back to back
+	 */
+	IdDictionary(IntBuffer ends, ByteBuffer bytes, int count) {
+		int length = count == 0 ? 0 : ends.get(count - 1);
+		arena = ByteBuffer.allocateDirect(Math.max(16 * 1024, length));
+		ByteBuffer source = bytes.duplicate();
+		source.limit(length);
+		arena.put(source);
+		arena.clear();
+
+		this.ends = new int[Math.max(1024, count)];
+		this.hashes = new int[this.ends.length];
+		this.table = new int[tableCapacity(this.ends.length)];
+		ends.get(0, this.ends, 0, count);
+		for (int id = 0; id < count; id++) {
+			int start = id == 0 ? 0 : this.ends[id - 1];
+			int hash = FNV_OFFSET;
+			for (int i = start, end = this.ends[id]; i < end; i++) {
+				hash = (hash ^ (arena.get(i) & 0xff)) * FNV_PRIME;
+			}
+			hashes[id] = mix(hash);
+			insert(id);
+		}
+		this.count = count;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/*
+	 * Returns the int for id, or -1 if it was never added
+	 */
+	public int find(CharSequence id) {
+		return find(id, hash(id));
+	}
+
+	/*
+	 * Returns the int for id, adding it as the next int if it is new
+	 */
+	public int add(CharSequence id) {
+		int hash = hash(id);
+		int existing = find(id, hash);
+		if (existing >= 0) {
+			return existing;
+		}
+		byte[] bytes = id.toString().getBytes(StandardCharsets.UTF_8);
+		int start = end(count - 1);
+		if (bytes.length > Integer.MAX_VALUE - start) {
+			throw new IllegalStateException("Id dictionary is full");
+		}
+		if (start + bytes.length > arena.capacity()) {
+			long capacity = Math.max((long) arena.capacity() * 2, (long) start + bytes.length);
+			ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, capacity));
+			arena.clear().limit(start);
+			grown.put(arena);
+			grown.clear();
+			arena = grown;
+		}
+		arena.put(start, bytes);
+
+		int next = count;
+		if (next == ends.length) {
+			ends = Arrays.copyOf(ends, next * 2);
+			hashes = Arrays.copyOf(hashes, next * 2);
+		}
+		ends[next] = start + bytes.length;
+		hashes[next] = hash;
+		count = next + 1;
+		if (count > table.length / 4 * 3) {
+			table = new int[table.length * 2];
+			for (int i = 0; i < count; i++) {
+				insert(i);
+			}
+		} else {
+			insert(next);
+		}
+		return next;
+	}
+
+	/*
+	 * Decodes the external id for an int
+	 */
+	public String get(int id) {
+		int start = end(id - 1);
+		byte[] bytes = new byte[ends[id] - start];
+		arena.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Bytes of id data held off the heap, and an estimate of the heap used
+	 * by the index arrays
+	 */
+	public long offHeapBytes() {
+		return arena.capacity();
+	}
+
+	public long heapBytes() {
+		return 4L * (ends.length + hashes.length + table.length);
+	}
+
+	/*
+	 * End offset of id in the arena; the ids are stored back to back, so
+	 * this is also the start of id + 1. end(-1) is 0.
+	 */
+	int end(int id) {
+		return id < 0 ? 0 : ends[id];
+	}
+
+	/*
+	 * The arena's id bytes [0, end(size() - 1)), for GraphSnapshot
+	 */
+	ByteBuffer bytes() {
+		ByteBuffer bytes = arena.duplicate();
+		bytes.clear().limit(end(count - 1));
+		return bytes;
+	}
+
+	private int find(CharSequence id, int hash) {
+		int mask = table.length - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			int entry = table[slot];
+			if (entry == 0) {
+				return -1;
+			}
+			if (hashes[entry - 1] == hash && matches(entry - 1, id)) {
+				return entry - 1;
+			}
+		}
+	}
+
+	private void insert(int id) {
+		int mask = table.length - 1;
+		int slot = hashes[id] & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = id + 1;
+	}
+
+	/*
+	 * Compares the UTF-8 encoding of value with the stored bytes of id
+	 */
+	private boolean matches(int id, CharSequence value) {
+		int position = end(id - 1);
+		int end = ends[id];
+		for (int i = 0, length = value.length(); i < length; i++) {
+			int encoded = utf8(value, i);
+			int bytes = utf8Length(encoded);
+			if (position + bytes > end) {
+				return false;
+			}
+			for (int b = 0; b < bytes; b++) {
+				if (arena.get(position++) != (byte) (encoded >>> (8 * b))) {
+					return false;
+				}
+			}
+			if (bytes == 4) {
+				i++;
+			}
+		}
+		return position == end;
+	}
+
+	/*
+	 * FNV-1a over the UTF-8 encoding of value, finished with a murmur3 mix so
+	 * nearby ids spread over the table
+	 */
+	private static int hash(CharSequence value) {
+		int hash = FNV_OFFSET;
+		for (int i = 0, length = value.length(); i < length; i++) {
+			int encoded = utf8(value, i);
+			int bytes = utf8Length(encoded);
+			for (int b = 0; b < bytes; b++) {
+				hash = (hash ^ ((encoded >>> (8 * b)) & 0xff)) * FNV_PRIME;
+			}
+			if (bytes == 4) {
+				i++;
+			}
+		}
+		return mix(hash);
+	}
+
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		return hash ^ (hash >>> 16);
+	}
+
+	/*
+	 * UTF-8 bytes of the char, or surrogate pair, at value[i], packed first
+	 * byte lowest. An unpaired surrogate encodes as '?', like
+	 * String.getBytes does.
+	 */
+	private static int utf8(CharSequence value, int i) {
+		char c = value.charAt(i);
+		if (c < 0x80) {
+			return c;
+		}
+		if (c < 0x800) {
+			return (0xc0 | c >> 6) | (0x80 | c & 0x3f) << 8;
+		}
+		if (Character.isSurrogate(c)) {
+			if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(i + 1));
+				return (0xf0 | codePoint >> 18) | (0x80 | codePoint >> 12 & 0x3f) << 8
+						| (0x80 | codePoint >> 6 & 0x3f) << 16 | (0x80 | codePoint & 0x3f) << 24;
+			}
+			return '?';
+		}
+		return (0xe0 | c >> 12) | (0x80 | c >> 6 & 0x3f) << 8 | (0x80 | c & 0x3f) << 16;
+	}
+
+	/*
+	 * Length of a UTF-8 sequence from its first byte
+	 */
+	private static int utf8Length(int encoded) {
+		int first = encoded & 0xff;
+		return first < 0x80 ? 1 : first < 0xe0 ? 2 : first < 0xf0 ? 3 : 4;
+	}
+
+	private static int tableCapacity(int ids) {
+		int capacity = 2048;
+		while (capacity / 4 * 3 < ids) {
+			capacity *= 2;
+		}
+		return capacity;
+	}
+}
@@ -0,0 +1,485 @@
+package ca.yorku.eecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResult;
+
+/*
+ * Engine that answers shortest-path queries from an in-process copy of the
+ * actor/movie graph with a BFS over primitive arrays. The copy is loaded from
+ * Neo4j once and then kept current through the write notifications.
+ *
+ * Queries against the root actor (Kevin Bacon) are answered from a
+ * precomputed ShortestPathTree: a Bacon number is one array lookup and a
+ * Bacon path is a walk up the parent pointers. Trees for other source actors
+ * are built on first use and kept in a bounded ShortestPathTreeCache.
+ * One-off pairwise queries use a BidirectionalSearch instead of a tree.
+ *
+ * Every query first checks the graph's connected components, so an actor
+ * with no path to the source is answered without building a tree or
+ * running a search.
+ *
+ * open() starts from a GraphSnapshot instead of Neo4j when there is one, and
+ * from then on appends every write notification to a GraphWal next to it.
+ * Notifications come after the Neo4j commit, so a crash in between can leave
+ * the snapshot and log behind the database; open() compares counts with
+ * Neo4j and reloads when they differ.
+ */
+public class InMemoryBaconEngine implements BaconEngine {
+
+	// Serializes snapshot writes, across engines since they share the file
+	private static final Object SNAPSHOT_LOCK = new Object();
+
+	private final ActorMovieGraph graph;
+	private final String rootId;
+	private ShortestPathTree rootTree;
+	private final ShortestPathTreeCache treeCache;
+	private final BidirectionalSearch pairSearch;
+	private volatile GraphWal wal;
+
+	public InMemoryBaconEngine(ActorMovieGraph graph, String rootId) {
+		this(graph, rootId, new ShortestPathTreeCache(64L * 1024 * 1024));
+	}
+
+	public InMemoryBaconEngine(ActorMovieGraph graph, String rootId, ShortestPathTreeCache treeCache) {
+		this(graph, rootId, treeCache, null);
+	}
+
+	/*
+	 * Uses rootTree as the root actor's BFS tree if it is given, or builds
+	 * one
+	 */
+	InMemoryBaconEngine(ActorMovieGraph graph, String rootId, ShortestPathTreeCache treeCache,
+			ShortestPathTree rootTree) {
+		this.graph = graph;
+		this.rootId = rootId;
+		this.treeCache = treeCache;
+		this.pairSearch = new BidirectionalSearch(graph);
+		treeCache.fitTo(graph.size());
+		graph.writeLock().lock();
+		try {
+			int root = graph.node(rootId);
+			if (rootTree != null && rootTree.source() == root) {
+				this.rootTree = rootTree;
+			} else if (root >= 0) {
+				this.rootTree = ShortestPathTree.build(graph, root);
+			}
+		} finally {
+			graph.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Loads the graph from the snapshot at file and replays the graph log
+	 * next to it (file + ".wal"). Without a usable snapshot, when the result
+	 * does not match the database's actor, movie and ACTED_IN counts, or with
+	 * fromDatabase set, the graph is read from Neo4j and a new snapshot is
+	 * written. Later writes are appended to the log.
+	 */
+	public static InMemoryBaconEngine open(Driver driver, String rootId, ShortestPathTreeCache treeCache, Path file,
+			boolean fromDatabase) throws IOException {
+		Path walFile = file.resolveSibling(file.getFileName() + ".wal");
+		InMemoryBaconEngine engine = null;
+		long generation = 0;
+
+		if (!fromDatabase && Files.exists(file)) {
+			try {
+				long start = System.currentTimeMillis();
+				GraphSnapshot.Loaded loaded = GraphSnapshot.read(file);
+				engine = new InMemoryBaconEngine(loaded.graph, rootId, treeCache, loaded.rootTree);
+				generation = loaded.generation;
+				int replayed = GraphWal.replay(walFile, generation, engine::apply);
+				Log.info(String.format("Loaded graph snapshot with %d nodes and %d edges, replayed %d log records in %d ms",
+						engine.graph.size(), engine.graph.edgeCount(), replayed, System.currentTimeMillis() - start));
+				if (!engine.matchesDatabase(driver)) {
+					Log.warn("Graph snapshot " + file + " does not match the database, reloading");
+					engine = null;
+				}
+			} catch (IOException e) {
+				Log.warn("Ignoring graph snapshot " + file + ": " + e.getMessage());
+				engine = null;
+			}
+		}
+
+		if (engine == null) {
+			engine = load(driver, rootId, treeCache);
+			synchronized (SNAPSHOT_LOCK) {
+				generation = GraphSnapshot.write(engine.graph, engine.rootTree, file);
+			}
+		}
+		engine.wal = GraphWal.open(walFile, generation);
+		return engine;
+	}
+
+	/*
+	 * Writes a new snapshot to file and starts the graph log over.
+	 * Writers wait until both are done, so no write falls between them.
+	 * Snapshots are taken one at a time, so two concurrent requests cannot
+	 * reset the log out of order.
+	 */
+	public void writeSnapshot(Path file) throws IOException {
+		synchronized (SNAPSHOT_LOCK) {
+			graph.readLock().lock();
+			try {
+				long generation = GraphSnapshot.write(graph, rootTree, file);
+				GraphWal log = wal;
+				if (log != null) {
+					log.reset(generation);
+				}
+			} finally {
+				graph.readLock().unlock();
+			}
+		}
+	}
+
+	/*
+	 * Stops logging writes, before another engine takes over the log
+	 */
+	public void closeWal() {
+		GraphWal log = wal;
+		wal = null;
+		if (log != null) {
+			try {
+				log.close();
+			} catch (IOException e) {
+				Log.warn("Could not close graph log: " + e);
+			}
+		}
+	}
+
+	/*
+	 * True if the graph has as many actors, movies and ACTED_IN edges as the
+	 * database, checked with one count query
+	 */
+	private boolean matchesDatabase(Driver driver) {
+		try (Session session = driver.session(AccessMode.READ)) {
+			Record counts = session.run("OPTIONAL MATCH (a:actor) WITH count(a) AS actors\n"
+					+ "OPTIONAL MATCH (m:movie) WITH actors, count(m) AS movies\n"
+					+ "OPTIONAL MATCH (:actor)-[r:ACTED_IN]->(:movie) RETURN actors, movies, count(r) AS edges")
+					.single();
+			int movies = graph.movieCount();
+			return counts.get("actors").asLong() == graph.size() - movies && counts.get("movies").asLong() == movies
+					&& counts.get("edges").asLong() == graph.edgeCount();
+		}
+	}
+
+	/*
+	 * Reads every actor, movie and ACTED_IN relationship from the database
+	 */
+	public static InMemoryBaconEngine load(Driver driver, String rootId, ShortestPathTreeCache treeCache) {
+		long start = System.currentTimeMillis();
+		ActorMovieGraph graph = new ActorMovieGraph();
+
+		try (Session session = driver.session(AccessMode.READ)) {
+			StatementResult actors = session.run("MATCH (a:actor) RETURN a.id AS id");
+			while (actors.hasNext()) {
+				Record record = actors.next();
+				if (!record.get("id").isNull()) {
+					graph.addActor(record.get("id").asString());
+				}
+			}
+
+			StatementResult movies = session.run("MATCH (m:movie) RETURN m.id AS id");
+			while (movies.hasNext()) {
+				Record record = movies.next();
+				if (!record.get("id").isNull()) {
+					graph.addMovie(record.get("id").asString());
+				}
+			}
+
+			int[] actorNodes = new int[1024];
+			int[] movieNodes = new int[1024];
+			int count = 0;
+			StatementResult edges = session
+					.run("MATCH (a:actor)-[:ACTED_IN]->(m:movie) RETURN a.id AS actor, m.id AS movie");
+			while (edges.hasNext()) {
+				Record record = edges.next();
+				if (record.get("actor").isNull() || record.get("movie").isNull()) {
+					continue;
+				}
+				int actor = graph.node(record.get("actor").asString());
+				int movie = graph.node(record.get("movie").asString());
+				if (actor < 0 || movie < 0) {
+					continue;
+				}
+				if (count == actorNodes.length) {
+					actorNodes = Arrays.copyOf(actorNodes, count * 2);
+					movieNodes = Arrays.copyOf(movieNodes, count * 2);
+				}
+				actorNodes[count] = actor;
+				movieNodes[count] = movie;
+				count++;
+			}
+			graph.addEdges(actorNodes, movieNodes, count);
+		}
+
+		InMemoryBaconEngine engine = new InMemoryBaconEngine(graph, rootId, treeCache);
+		Log.info(String.format("Loaded graph with %d nodes and %d edges in %d ms", graph.size(), graph.edgeCount(),
+				System.currentTimeMillis() - start));
+		return engine;
+	}
+
+	public ActorMovieGraph graph() {
+		return graph;
+	}
+
+	@Override
+	public int baconNumber(String actorId, String sourceId) {
+		graph.readLock().lock();
+		try {
+			int actor = graph.node(actorId);
+			if (!sameComponent(actor, sourceId)) {
+				return NOT_CONNECTED;
+			}
+			ShortestPathTree tree = treeFor(sourceId);
+			if (tree == null || tree.distance(actor) == ShortestPathTree.UNREACHED) {
+				return NOT_CONNECTED;
+			}
+			return tree.distance(actor) / 2;
+		} finally {
+			graph.readLock().unlock();
+		}
+	}
+
+	/*
+	 * The BFS tree holds exact distances, so the bound only decides how a
+	 * result is reported
+	 */
+	@Override
+	public int baconNumber(String actorId, String sourceId, int maxDegrees) {
+		int baconNumber = baconNumber(actorId, sourceId);
+		return baconNumber > maxDegrees ? BEYOND_BOUND : baconNumber;
+	}
+
+	@Override
+	public List<String> baconPath(String actorId, String sourceId, int maxDegrees) {
+		graph.readLock().lock();
+		try {
+			int actor = graph.node(actorId);
+			if (!sameComponent(actor, sourceId)) {
+				return null;
+			}
+			ShortestPathTree tree = treeFor(sourceId);
+			if (tree == null || tree.distance(actor) > 2 * maxDegrees) {
+				return null;
+			}
+			return toIds(tree.pathFrom(actor));
+		} finally {
+			graph.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Looks every actor up in the same BFS tree under one read lock
+	 */
+	@Override
+	public int[] baconNumbers(List<String> actorIds, String sourceId, int maxDegrees) {
+		int[] numbers = new int[actorIds.size()];
+		graph.readLock().lock();
+		try {
+			ShortestPathTree tree = treeFor(sourceId);
+			for (int i = 0; i < numbers.length; i++) {
+				int actor = graph.node(actorIds.get(i));
+				if (actor < 0 || graph.isMovie(actor)) {
+					numbers[i] = NOT_FOUND;
+				} else if (tree == null || tree.distance(actor) == ShortestPathTree.UNREACHED) {
+					numbers[i] = NOT_CONNECTED;
+				} else {
+					int baconNumber = tree.distance(actor) / 2;
+					numbers[i] = baconNumber > maxDegrees ? BEYOND_BOUND : baconNumber;
+				}
+			}
+			return numbers;
+		} finally {
+			graph.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<String> baconPath(String actorId, String sourceId) {
+		graph.readLock().lock();
+		try {
+			int actor = graph.node(actorId);
+			if (!sameComponent(actor, sourceId)) {
+				return null;
+			}
+			ShortestPathTree tree = treeFor(sourceId);
+			int[] path = tree == null ? null : tree.pathFrom(actor);
+			return toIds(path);
+		} finally {
+			graph.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<String> shortestPath(String fromId, String toId) {
+		graph.readLock().lock();
+		try {
+			int from = graph.node(fromId);
+			int to = graph.node(toId);
+			if (from < 0 || to < 0 || !graph.connected(from, to)) {
+				return null;
+			}
+			return toIds(pairSearch.shortestPath(from, to));
+		} finally {
+			graph.readLock().unlock();
+		}
+	}
+
+	public ShortestPathTreeCache treeCache() {
+		return treeCache;
+	}
+
+	@Override
+	public void actorAdded(String actorId) {
+		graph.writeLock().lock();
+		try {
+			int actor = graph.addActor(actorId);
+			if (rootTree == null && actorId.equals(rootId)) {
+				rootTree = ShortestPathTree.build(graph, actor);
+			}
+			log(GraphWal.ACTOR, actorId, null);
+		} finally {
+			graph.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void movieAdded(String movieId) {
+		graph.writeLock().lock();
+		try {
+			graph.addMovie(movieId);
+			log(GraphWal.MOVIE, movieId, null);
+		} finally {
+			graph.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Adds the edge and repairs the root tree and the cached trees of other
+	 * sources incrementally instead of rebuilding them
+	 */
+	@Override
+	public void relationshipAdded(String actorId, String movieId) {
+		graph.writeLock().lock();
+		try {
+			if (graph.addEdge(actorId, movieId)) {
+				int actor = graph.node(actorId);
+				int movie = graph.node(movieId);
+				if (rootTree != null) {
+					rootTree.edgeAdded(graph, actor, movie);
+				}
+				treeCache.edgeAdded(graph, actor, movie);
+				log(GraphWal.RELATIONSHIP, actorId, movieId);
+			}
+		} finally {
+			graph.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Applies a replayed log record
+	 */
+	private void apply(byte kind, String first, String second) {
+		if (kind == GraphWal.ACTOR) {
+			actorAdded(first);
+		} else if (kind == GraphWal.MOVIE) {
+			movieAdded(first);
+		} else if (kind == GraphWal.RELATIONSHIP) {
+			relationshipAdded(first, second);
+		}
+	}
+
+	/*
+	 * Appends a write to the log, under the graph's write lock so it cannot
+	 * fall between a snapshot and the log reset. A failed append leaves the
+	 * snapshot behind Neo4j until the next one is written.
+	 */
+	private void log(byte kind, String first, String second) {
+		GraphWal log = wal;
+		if (log == null) {
+			return;
+		}
+		try {
+			log.append(kind, first, second);
+		} catch (IOException e) {
+			Log.error("Could not append to graph log", e);
+		}
+	}
+
+	private List<String> toIds(int[] path) {
+		if (path == null) {
+			return null;
+		}
+		List<String> ids = new ArrayList<>(path.length);
+		for (int node : path) {
+			ids.add(graph.id(node));
+		}
+		return ids;
+	}
+
+	/*
+	 * True if actorId is an actor in the graph
+	 */
+	public boolean hasActor(String actorId) {
+		int node = graph.node(actorId);
+		return node >= 0 && !graph.isMovie(node);
+	}
+
+	/*
+	 * True if both actors are known and in the same connected component, so
+	 * a missing path means too far apart rather than not connected
+	 */
+	public boolean connected(String actorId, String sourceId) {
+		graph.readLock().lock();
+		try {
+			return sameComponent(graph.node(actorId), sourceId);
+		} finally {
+			graph.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean notConnected(String actorId, String sourceId) {
+		return !connected(actorId, sourceId);
+	}
+
+	/*
+	 * True if actor and the source actor are known and in the same connected
+	 * component. Caller holds the read lock.
+	 */
+	private boolean sameComponent(int actor, String sourceId) {
+		int source = graph.node(sourceId);
+		return actor >= 0 && source >= 0 && graph.connected(actor, source);
+	}
+
+	/*
+	 * Returns the BFS tree for a source actor: the pinned root tree, a cached
+	 * tree, or a freshly built one that is then cached. Caller holds the read
+	 * lock.
+	 */
+	private ShortestPathTree treeFor(String sourceId) {
+		if (sourceId.equals(rootId)) {
+			return rootTree;
+		}
+		int source = graph.node(sourceId);
+		if (source < 0) {
+			return null;
+		}
+		ShortestPathTree tree = treeCache.get(source);
+		if (tree == null) {
+			tree = ShortestPathTree.build(graph, source);
+			treeCache.put(tree);
+		}
+		return tree;
+	}
+}
@@ -0,0 +1,123 @@
+package ca.yorku.eecs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementRunner;
+import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.TransactionWork;
+
+/*
+ * Wraps a Driver so every statement run through it is timed and counted in
+ * Metrics, without touching the call sites.
+ *
+ * Sessions handed out by the driver, transactions they begin and the
+ * transactions passed to readTransaction/writeTransaction work are wrapped
+ * the same way; each run(...) call is one Neo4j round trip. Sessions and
+ * transactions are counted while open. For an explicit transaction the time
+ * taken by beginTransaction is recorded as connection acquisition time; for
+ * readTransaction/writeTransaction it is the time until the work first runs,
+ * and the transaction counts as open until the call returns. An auto-commit
+ * session.run acquires its connection inside the call, so that wait is only
+ * part of its query latency and it is not counted as an open transaction.
+ * Async statements complete on driver threads and are timed by AsyncQueries.
+ */
+public class InstrumentedDriver {
+
+	public static Driver wrap(Driver driver, Metrics metrics) {
+		return proxy(Driver.class, driver, metrics, false);
+	}
+
+	/*
+	 * Proxies target; closing a tracked proxy counts its session or
+	 * transaction as closed
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, T target, Metrics metrics, boolean tracked) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+				new Handler(target, metrics, tracked));
+	}
+
+	private static final class Handler implements InvocationHandler {
+		private final Object target;
+		private final Metrics metrics;
+		private boolean closed;
+
+		Handler(Object target, Metrics metrics, boolean tracked) {
+			this.target = target;
+			this.metrics = metrics;
+			this.closed = !tracked;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			ManagedCall managed = null;
+			if (args != null && (name.equals("readTransaction") || name.equals("writeTransaction"))
+					&& args[0] instanceof TransactionWork) {
+				managed = new ManagedCall();
+				args = args.clone();
+				args[0] = wrapWork((TransactionWork<?>) args[0], managed);
+			}
+
+			boolean timed = name.equals("run") && target instanceof StatementRunner;
+			long start = System.nanoTime();
+			Object result;
+			try {
+				result = method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				if (timed) {
+					metrics.recordQuery(System.nanoTime() - start);
+				}
+				if (managed != null && managed.opened) {
+					metrics.transactionClosed();
+				}
+				// a failed commit still releases the transaction
+				if ((name.equals("close") || name.equals("closeAsync")) && !closed) {
+					closed = true;
+					if (target instanceof Transaction) {
+						metrics.transactionClosed();
+					} else if (target instanceof Session) {
+						metrics.sessionClosed();
+					}
+				}
+			}
+
+			if (result instanceof Session && method.getReturnType() == Session.class) {
+				metrics.sessionOpened();
+				return proxy(Session.class, (Session) result, metrics, true);
+			}
+			if (result instanceof Transaction && method.getReturnType() == Transaction.class) {
+				metrics.transactionOpened(System.nanoTime() - start);
+				return proxy(Transaction.class, (Transaction) result, metrics, true);
+			}
+			return result;
+		}
+
+		private <T> TransactionWork<T> wrapWork(TransactionWork<T> work, ManagedCall managed) {
+			// the driver owns and closes these transactions, and may retry the work
+			return tx -> {
+				if (!managed.opened) {
+					managed.opened = true;
+					metrics.transactionOpened(System.nanoTime() - managed.start);
+				}
+				return work.execute(proxy(Transaction.class, tx, metrics, false));
+			};
+		}
+	}
+
+	/*
+	 * One readTransaction/writeTransaction call, opened once its work first
+	 * runs
+	 */
+	private static final class ManagedCall {
+		final long start = System.nanoTime();
+		boolean opened;
+	}
+}
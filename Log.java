@@ -0,0 +1,248 @@
+package ca.yorku.eecs;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Leveled logging with an asynchronous appender.
+ *
+ * Request threads only build a small event and offer it to a bounded ring
+ * buffer; a single daemon thread drains it in batches, formats each event as
+ * a logfmt line (ts=... level=... thread=... msg="...") and flushes stdout
+ * once per batch. When the buffer is full the event is dropped and counted
+ * rather than blocking the request.
+ *
+ * Settings (system property or environment variable):
+ *   log.level         DEBUG, INFO (default), WARN or ERROR
+ *   log.bufferSize    events held before dropping (default 8192)
+ *   log.accessSample  fraction of requests written to the access log
+ *                     (default 0.01); 5xx responses are always logged
+ *
+ * DEBUG is a constant fixed at startup, so guarding hot-path debug output
+ * with "if (Log.DEBUG)" lets the JIT drop it entirely when disabled.
+ */
+public final class Log {
+
+	public static final int DEBUG_LEVEL = 0, INFO_LEVEL = 1, WARN_LEVEL = 2, ERROR_LEVEL = 3;
+	private static final String[] NAMES = { "DEBUG", "INFO", "WARN", "ERROR" };
+
+	private static final int LEVEL = parseLevel(Settings.get("log.level", "INFO"));
+	public static final boolean DEBUG = LEVEL <= DEBUG_LEVEL;
+
+	private static final double ACCESS_SAMPLE = parseSample(Settings.get("log.accessSample", "0.01"));
+	private static final int BATCH_SIZE = 256;
+
+	private static final ArrayBlockingQueue<Event> BUFFER = new ArrayBlockingQueue<>(
+			Math.max(16, parseBufferSize(Settings.get("log.bufferSize", "8192"))));
+	private static final LongAdder DROPPED = new LongAdder();
+	private static final Writer OUT = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+			1 << 16);
+
+	static {
+		Thread writer = new Thread(Log::drain, "log-writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+	}
+
+	private Log() {
+	}
+
+	public static void debug(String message) {
+		log(DEBUG_LEVEL, message, null);
+	}
+
+	public static void info(String message) {
+		log(INFO_LEVEL, message, null);
+	}
+
+	public static void warn(String message) {
+		log(WARN_LEVEL, message, null);
+	}
+
+	public static void error(String message, Throwable error) {
+		log(ERROR_LEVEL, message, error);
+	}
+
+	/*
+	 * Writes one access-log line for a sampled fraction of requests, and for
+	 * every server error
+	 */
+	public static void access(String method, String endpoint, int status, long nanos) {
+		if (status < 500 && (ACCESS_SAMPLE <= 0 || ThreadLocalRandom.current().nextDouble() >= ACCESS_SAMPLE)) {
+			return;
+		}
+		Event event = new Event(INFO_LEVEL, null, null);
+		event.access = true;
+		event.method = method;
+		event.endpoint = endpoint;
+		event.status = status;
+		event.nanos = nanos;
+		enqueue(event);
+	}
+
+	/*
+	 * Events dropped because the buffer was full
+	 */
+	public static long dropped() {
+		return DROPPED.sum();
+	}
+
+	private static void log(int level, String message, Throwable error) {
+		if (level < LEVEL) {
+			return;
+		}
+		enqueue(new Event(level, message, error));
+	}
+
+	private static void enqueue(Event event) {
+		if (!BUFFER.offer(event)) {
+			DROPPED.increment();
+		}
+	}
+
+	private static void drain() {
+		List<Event> batch = new ArrayList<>(BATCH_SIZE);
+		StringBuilder line = new StringBuilder(256);
+		while (true) {
+			try {
+				Event first = BUFFER.poll(1, TimeUnit.SECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				BUFFER.drainTo(batch, BATCH_SIZE - 1);
+				synchronized (OUT) {
+					for (Event event : batch) {
+						line.setLength(0);
+						event.format(line);
+						OUT.write(line.toString());
+					}
+					OUT.flush();
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (Exception e) {
+				// Nowhere left to report a failing stdout
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/*
+	 * Writes out whatever is still buffered, at shutdown
+	 */
+	private static void flush() {
+		List<Event> rest = new ArrayList<>();
+		BUFFER.drainTo(rest);
+		StringBuilder line = new StringBuilder(256);
+		synchronized (OUT) {
+			try {
+				for (Event event : rest) {
+					line.setLength(0);
+					event.format(line);
+					OUT.write(line.toString());
+				}
+				OUT.flush();
+			} catch (Exception e) {
+				// Nowhere left to report a failing stdout
+			}
+		}
+	}
+
+	private static int parseLevel(String level) {
+		for (int i = 0; i < NAMES.length; i++) {
+			if (NAMES[i].equalsIgnoreCase(level)) {
+				return i;
+			}
+		}
+		return INFO_LEVEL;
+	}
+
+	private static double parseSample(String sample) {
+		try {
+			return Double.parseDouble(sample);
+		} catch (NumberFormatException e) {
+			return 0.01;
+		}
+	}
+
+	/*
+	 * Not Settings.getInt, which reports a bad value through this class
+	 * before it is initialized
+	 */
+	private static int parseBufferSize(String size) {
+		try {
+			return Integer.parseInt(size);
+		} catch (NumberFormatException e) {
+			return 8192;
+		}
+	}
+
+	private static final class Event {
+		final long time = System.currentTimeMillis();
+		final String thread = Thread.currentThread().getName();
+		final int level;
+		final String message;
+		final Throwable error;
+		boolean access;
+		String method;
+		String endpoint;
+		int status;
+		long nanos;
+
+		Event(int level, String message, Throwable error) {
+			this.level = level;
+			this.message = message;
+			this.error = error;
+		}
+
+		void format(StringBuilder out) {
+			out.append("ts=").append(Instant.ofEpochMilli(time)).append(" level=").append(NAMES[level])
+					.append(" thread=").append(thread);
+			if (access) {
+				out.append(" log=access method=").append(method).append(" endpoint=").append(endpoint)
+						.append(" status=").append(status).append(" ms=").append(nanos / 1000 / 1000.0);
+			} else {
+				out.append(" msg=");
+				quote(out, String.valueOf(message));
+				if (error != null) {
+					out.append(" error=");
+					StringWriter trace = new StringWriter();
+					error.printStackTrace(new PrintWriter(trace));
+					quote(out, trace.toString());
+				}
+			}
+			out.append('\n');
+		}
+
+		private static void quote(StringBuilder out, String value) {
+			out.append('"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c == '"' || c == '\\') {
+					out.append('\\').append(c);
+				} else if (c == '\n') {
+					out.append("\\n");
+				} else if (c == '\t') {
+					out.append("\\t");
+				} else if (c != '\r') {
+					out.append(c);
+				}
+			}
+			out.append('"');
+		}
+	}
+}
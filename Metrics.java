@@ -0,0 +1,297 @@
+package ca.yorku.eecs;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Request and Neo4j metrics, rendered in the Prometheus text format for
+ * GET /api/v1/metrics.
+ *
+ * Recording is lock-free: counters and histogram buckets are LongAdders, and
+ * per-endpoint entries are created once through ConcurrentHashMap and only
+ * read afterwards. The Neo4j round-trip count of the request running on the
+ * current thread is kept in a ThreadLocal between beginRequest and
+ * endRequest. A request that completes on another thread (server.async)
+ * takes its Request off the thread with detach() and passes it along.
+ *
+ * The 1.7 driver does not publish its pool metrics, so pool usage is tracked
+ * here from the sessions and transactions InstrumentedDriver sees: every
+ * open transaction holds one pooled connection, and beginning one (which
+ * pipelines BEGIN) mostly waits on connection acquisition. Auto-commit
+ * session.run calls are not in either metric.
+ */
+public class Metrics {
+
+	// Upper bounds in seconds
+	private static final double[] LATENCY_BUCKETS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25,
+			0.5, 1, 2.5, 5, 10 };
+	private static final double[] ROUND_TRIP_BUCKETS = { 0, 1, 2, 3, 4, 5, 8, 13, 21 };
+
+	private static final String BACKGROUND = "background";
+
+	private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+	private final Map<String, Histogram> queryLatency = new ConcurrentHashMap<>();
+	private final Map<String, Histogram> acquireLatency = new ConcurrentHashMap<>();
+	private final LongAdder sessionsOpen = new LongAdder();
+	private final LongAdder transactionsOpen = new LongAdder();
+	private volatile int maxPoolSize;
+	private final LongAdder writeBatches = new LongAdder();
+	private final LongAdder writesCommitted = new LongAdder();
+	private volatile WriteBehindQueue writeQueue;
+	private final ThreadLocal<Request> current = new ThreadLocal<>();
+
+	/*
+	 * Marks the start of a request on this thread
+	 */
+	public void beginRequest(String endpoint) {
+		Request request = current.get();
+		if (request == null) {
+			request = new Request();
+			current.set(request);
+		}
+		request.endpoint = endpoint;
+		request.roundTrips = 0;
+		endpoint(endpoint).inFlight.increment();
+	}
+
+	/*
+	 * Records the outcome of the request started by beginRequest
+	 */
+	public void endRequest(int status, long nanos) {
+		endRequest(current.get(), status, nanos);
+	}
+
+	/*
+	 * Detaches the request running on this thread, so it can be recorded
+	 * and ended from whichever thread completes it
+	 */
+	public Request detach() {
+		Request request = current.get();
+		current.remove();
+		return request;
+	}
+
+	/*
+	 * Puts a detached request back on this thread
+	 */
+	public void attach(Request request) {
+		current.set(request);
+	}
+
+	public void endRequest(Request request, int status, long nanos) {
+		if (request == null || request.endpoint == null) {
+			return;
+		}
+		Endpoint endpoint = endpoint(request.endpoint);
+		endpoint.inFlight.decrement();
+		endpoint.latency.record(nanos / 1e9);
+		endpoint.roundTrips.record(request.roundTrips);
+		endpoint.statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+		request.endpoint = null;
+	}
+
+	/*
+	 * Records one Neo4j round trip against the request on this thread, or
+	 * against "background" work such as loading the graph at startup
+	 */
+	public void recordQuery(long nanos) {
+		recordQuery(current.get(), nanos);
+	}
+
+	public void recordQuery(Request request, long nanos) {
+		String endpoint = BACKGROUND;
+		if (request != null && request.endpoint != null) {
+			request.roundTrips++;
+			endpoint = request.endpoint;
+		}
+		queryLatency.computeIfAbsent(endpoint, e -> new Histogram(LATENCY_BUCKETS)).record(nanos / 1e9);
+	}
+
+	/*
+	 * Records a transaction, explicit or managed by readTransaction /
+	 * writeTransaction, that took nanos to begin, and now holds a pooled
+	 * connection until transactionClosed
+	 */
+	public void transactionOpened(long nanos) {
+		Request request = current.get();
+		String endpoint = request != null && request.endpoint != null ? request.endpoint : BACKGROUND;
+		acquireLatency.computeIfAbsent(endpoint, e -> new Histogram(LATENCY_BUCKETS)).record(nanos / 1e9);
+		transactionsOpen.increment();
+	}
+
+	public void transactionClosed() {
+		transactionsOpen.decrement();
+	}
+
+	public void sessionOpened() {
+		sessionsOpen.increment();
+	}
+
+	public void sessionClosed() {
+		sessionsOpen.decrement();
+	}
+
+	public void setMaxPoolSize(int maxPoolSize) {
+		this.maxPoolSize = maxPoolSize;
+	}
+
+	/*
+	 * Reports the depth of the write-behind queue (write.behind=true)
+	 */
+	public void setWriteQueue(WriteBehindQueue writeQueue) {
+		this.writeQueue = writeQueue;
+	}
+
+	/*
+	 * Records one group commit of size writes
+	 */
+	public void writeBatchCommitted(int size) {
+		writeBatches.increment();
+		writesCommitted.add(size);
+	}
+
+	/*
+	 * Renders every metric in the Prometheus text exposition format
+	 */
+	public String toPrometheus() {
+		StringBuilder out = new StringBuilder(4096);
+
+		out.append("# HELP bacon_http_requests_total HTTP requests by endpoint and status code.\n");
+		out.append("# TYPE bacon_http_requests_total counter\n");
+		for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+			for (Map.Entry<Integer, LongAdder> status : e.getValue().statuses.entrySet()) {
+				out.append("bacon_http_requests_total{endpoint=\"").append(e.getKey()).append("\",status=\"")
+						.append(status.getKey()).append("\"} ").append(status.getValue().sum()).append('\n');
+			}
+		}
+
+		out.append("# HELP bacon_http_requests_in_flight HTTP requests currently being handled.\n");
+		out.append("# TYPE bacon_http_requests_in_flight gauge\n");
+		for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+			out.append("bacon_http_requests_in_flight{endpoint=\"").append(e.getKey()).append("\"} ")
+					.append(e.getValue().inFlight.sum()).append('\n');
+		}
+
+		out.append("# HELP bacon_http_request_duration_seconds HTTP request latency.\n");
+		out.append("# TYPE bacon_http_request_duration_seconds histogram\n");
+		for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+			e.getValue().latency.render(out, "bacon_http_request_duration_seconds", e.getKey());
+		}
+
+		out.append("# HELP bacon_neo4j_round_trips_per_request Neo4j statements run per HTTP request.\n");
+		out.append("# TYPE bacon_neo4j_round_trips_per_request histogram\n");
+		for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+			e.getValue().roundTrips.render(out, "bacon_neo4j_round_trips_per_request", e.getKey());
+		}
+
+		out.append("# HELP bacon_neo4j_query_duration_seconds Neo4j statement latency by calling endpoint.\n");
+		out.append("# TYPE bacon_neo4j_query_duration_seconds histogram\n");
+		for (Map.Entry<String, Histogram> e : queryLatency.entrySet()) {
+			e.getValue().render(out, "bacon_neo4j_query_duration_seconds", e.getKey());
+		}
+
+		out.append("# HELP bacon_neo4j_pool_max_connections Configured Neo4j connection pool size.\n");
+		out.append("# TYPE bacon_neo4j_pool_max_connections gauge\n");
+		out.append("bacon_neo4j_pool_max_connections ").append(maxPoolSize).append('\n');
+
+		out.append("# HELP bacon_neo4j_transactions_open Explicit and read/writeTransaction transactions open, each holding a pooled connection; auto-commit session.run is not counted.\n");
+		out.append("# TYPE bacon_neo4j_transactions_open gauge\n");
+		out.append("bacon_neo4j_transactions_open ").append(transactionsOpen.sum()).append('\n');
+
+		out.append("# HELP bacon_neo4j_sessions_open Neo4j sessions open.\n");
+		out.append("# TYPE bacon_neo4j_sessions_open gauge\n");
+		out.append("bacon_neo4j_sessions_open ").append(sessionsOpen.sum()).append('\n');
+
+		out.append("# HELP bacon_neo4j_connection_acquire_seconds Time to begin an explicit or read/writeTransaction transaction, mostly waiting for a pooled connection; auto-commit session.run is excluded and its wait is part of its query duration.\n");
+		out.append("# TYPE bacon_neo4j_connection_acquire_seconds histogram\n");
+		for (Map.Entry<String, Histogram> e : acquireLatency.entrySet()) {
+			e.getValue().render(out, "bacon_neo4j_connection_acquire_seconds", e.getKey());
+		}
+
+		WriteBehindQueue queue = writeQueue;
+		if (queue != null) {
+			out.append("# HELP bacon_write_queue_depth Writes waiting for the write-behind writer.\n");
+			out.append("# TYPE bacon_write_queue_depth gauge\n");
+			out.append("bacon_write_queue_depth ").append(queue.depth()).append('\n');
+
+			out.append("# HELP bacon_write_batches_total Write-behind group commits.\n");
+			out.append("# TYPE bacon_write_batches_total counter\n");
+			out.append("bacon_write_batches_total ").append(writeBatches.sum()).append('\n');
+
+			out.append("# HELP bacon_write_batched_total Writes handled by write-behind group commits.\n");
+			out.append("# TYPE bacon_write_batched_total counter\n");
+			out.append("bacon_write_batched_total ").append(writesCommitted.sum()).append('\n');
+		}
+
+		out.append("# HELP bacon_log_dropped_total Log events dropped because the log buffer was full.\n");
+		out.append("# TYPE bacon_log_dropped_total counter\n");
+		out.append("bacon_log_dropped_total ").append(Log.dropped()).append('\n');
+
+		return out.toString();
+	}
+
+	private Endpoint endpoint(String name) {
+		Endpoint endpoint = endpoints.get(name);
+		return endpoint != null ? endpoint : endpoints.computeIfAbsent(name, n -> new Endpoint());
+	}
+
+	/*
+	 * A request in progress, as returned by detach()
+	 */
+	public static final class Request {
+		private volatile String endpoint;
+		private volatile int roundTrips;
+	}
+
+	private static final class Endpoint {
+		final LongAdder inFlight = new LongAdder();
+		final Histogram latency = new Histogram(LATENCY_BUCKETS);
+		final Histogram roundTrips = new Histogram(ROUND_TRIP_BUCKETS);
+		final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+	}
+
+	/*
+	 * Cumulative-bucket histogram with fixed upper bounds
+	 */
+	private static final class Histogram {
+		final double[] bounds;
+		final LongAdder[] buckets;
+		final LongAdder count = new LongAdder();
+		final DoubleAdder sum = new DoubleAdder();
+
+		Histogram(double[] bounds) {
+			this.bounds = bounds;
+			this.buckets = new LongAdder[bounds.length];
+			for (int i = 0; i < bounds.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		void record(double value) {
+			for (int i = 0; i < bounds.length; i++) {
+				if (value <= bounds[i]) {
+					buckets[i].increment();
+					break;
+				}
+			}
+			count.increment();
+			sum.add(value);
+		}
+
+		void render(StringBuilder out, String name, String endpoint) {
+			long cumulative = 0;
+			for (int i = 0; i < bounds.length; i++) {
+				cumulative += buckets[i].sum();
+				out.append(name).append("_bucket{endpoint=\"").append(endpoint).append("\",le=\"").append(bounds[i])
+						.append("\"} ").append(cumulative).append('\n');
+			}
+			long total = count.sum();
+			out.append(name).append("_bucket{endpoint=\"").append(endpoint).append("\",le=\"+Inf\"} ").append(total)
+					.append('\n');
+			out.append(name).append("_sum{endpoint=\"").append(endpoint).append("\"} ").append(sum.sum()).append('\n');
+			out.append(name).append("_count{endpoint=\"").append(endpoint).append("\"} ").append(total).append('\n');
+		}
+	}
+}
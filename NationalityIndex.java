@@ -0,0 +1,196 @@
+package ca.yorku.eecs;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResult;
+
+/*
+ * In-memory inverted index from nationality to the actors that have it, so
+ * getNationality can be answered without querying Neo4j.
+ *
+ * Actors with a nationality are interned to dense ints; each nationality
+ * maps to an array of those ints kept sorted by actor id, so a page after a
+ * cursor is found by binary search. The index is loaded once at startup and
+ * then kept current by the handlers that write a nationality
+ * (insertActorNationality and insertNationality).
+ */
+public class NationalityIndex {
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Map<String, Integer> index = new HashMap<>();
+	private final Map<String, Group> byNationality = new HashMap<>();
+	private String[] ids = new String[1024];
+	private String[] names = new String[1024];
+	private String[] nationalities = new String[1024];
+	private int actorCount;
+
+	/*
+	 * Reads every actor with a nationality from the database
+	 */
+	public static NationalityIndex load(Driver driver) {
+		long start = System.currentTimeMillis();
+		NationalityIndex nationalityIndex = new NationalityIndex();
+		try (Session session = driver.session(AccessMode.READ)) {
+			StatementResult result = session.run(
+					"MATCH (a:actor) WHERE a.nationality IS NOT NULL RETURN a.id, a.name, a.nationality");
+			while (result.hasNext()) {
+				Record record = result.next();
+				nationalityIndex.put(record.get(0).asString(), record.get(1).asString(), record.get(2).asString());
+			}
+		}
+		Log.info(String.format("Loaded nationality index with %d actors and %d nationalities in %d ms",
+				nationalityIndex.actorCount, nationalityIndex.byNationality.size(),
+				System.currentTimeMillis() - start));
+		return nationalityIndex;
+	}
+
+	/*
+	 * Records that actorId, called name, now has the given nationality,
+	 * moving it out of its previous nationality if it had one
+	 */
+	public void put(String actorId, String name, String nationality) {
+		lock.writeLock().lock();
+		try {
+			Integer node = index.get(actorId);
+			if (node == null) {
+				node = actorCount++;
+				if (node == ids.length) {
+					ids = Arrays.copyOf(ids, node * 2);
+					names = Arrays.copyOf(names, node * 2);
+					nationalities = Arrays.copyOf(nationalities, node * 2);
+				}
+				index.put(actorId, node);
+				ids[node] = actorId;
+			} else if (nationalities[node] != null && !nationalities[node].equals(nationality)) {
+				Group previous = byNationality.get(nationalities[node]);
+				previous.remove(find(previous, actorId));
+				if (previous.size == 0) {
+					byNationality.remove(nationalities[node]);
+				}
+			}
+			names[node] = name;
+			Group group = byNationality.computeIfAbsent(nationality, n -> new Group());
+			int at = find(group, actorId);
+			if (at < 0) {
+				group.insert(-(at + 1), node);
+			}
+			nationalities[node] = nationality;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Returns the actors with the given nationality, ordered by id. The result
+	 * is a snapshot and is safe to read without locking.
+	 */
+	public Members members(String nationality) {
+		lock.readLock().lock();
+		try {
+			Group group = byNationality.get(nationality);
+			return new Members(group == null ? new int[0] : Arrays.copyOf(group.nodes, group.size), ids, names);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Returns up to limit + 1 actors with the given nationality whose ids sort
+	 * after cursor, ordered by id, so the caller can tell whether another page
+	 * follows
+	 */
+	public Members page(String nationality, String cursor, int limit) {
+		lock.readLock().lock();
+		try {
+			Group group = byNationality.get(nationality);
+			if (group == null) {
+				return new Members(new int[0], ids, names);
+			}
+			int at = find(group, cursor);
+			int from = at >= 0 ? at + 1 : -(at + 1);
+			int to = (int) Math.min(group.size, from + (long) limit + 1);
+			return new Members(Arrays.copyOfRange(group.nodes, from, to), ids, names);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Binary search of group for actorId: its position, or (-(insertion
+	 * point) - 1) like Arrays.binarySearch
+	 */
+	private int find(Group group, String actorId) {
+		int low = 0;
+		int high = group.size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = ids[group.nodes[mid]].compareTo(actorId);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/*
+	 * The actors of one nationality, sorted by actor id
+	 */
+	private static final class Group {
+		int[] nodes = new int[4];
+		int size;
+
+		void insert(int at, int node) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+			}
+			System.arraycopy(nodes, at, nodes, at + 1, size - at);
+			nodes[at] = node;
+			size++;
+		}
+
+		void remove(int at) {
+			System.arraycopy(nodes, at + 1, nodes, at, size - at - 1);
+			size--;
+		}
+	}
+
+	/*
+	 * A snapshot of index entries. The arrays only ever grow by copying, so
+	 * entries that existed when the snapshot was taken stay readable.
+	 */
+	public static final class Members {
+		private final int[] nodes;
+		private final String[] ids;
+		private final String[] names;
+
+		Members(int[] nodes, String[] ids, String[] names) {
+			this.nodes = nodes;
+			this.ids = ids;
+			this.names = names;
+		}
+
+		public int size() {
+			return nodes.length;
+		}
+
+		public String actorId(int i) {
+			return ids[nodes[i]];
+		}
+
+		public String name(int i) {
+			return names[nodes[i]];
+		}
+	}
+}
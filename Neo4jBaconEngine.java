@@ -0,0 +1,274 @@
+package ca.yorku.eecs;
+
+import static org.neo4j.driver.v1.Values.parameters;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.Statement;
+import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.TransactionConfig;
+import org.neo4j.driver.v1.exceptions.Neo4jException;
+import org.neo4j.driver.v1.types.Node;
+
+/*
+ * Fallback engine that asks Neo4j for every shortest path. Holds no state of
+ * its own, so the write notifications are no-ops.
+ *
+ * Every statement runs with a server-side transaction timeout of
+ * bacon.queryTimeoutMs (default 5000), so a search across a huge component
+ * cannot hold a request thread indefinitely. A bounded search that finds
+ * nothing reports NOT_CONNECTED only if one of the actors has not acted in
+ * any movie. Telling a longer path from no path in general would take an
+ * unbounded search, so every other miss is BEYOND_BOUND. A bound of 0 is
+ * answered without a query.
+ *
+ * The *Async variants serve the server.async pipeline. They check that both
+ * actors exist in the same statement as the search, so a request costs one
+ * round trip.
+ */
+public class Neo4jBaconEngine implements BaconEngine {
+
+	private final Driver driver;
+	private final TransactionConfig timeout;
+
+	public Neo4jBaconEngine(Driver driver) {
+		this.driver = driver;
+		this.timeout = TransactionConfig.builder()
+				.withTimeout(Duration.ofMillis(Settings.getInt("bacon.queryTimeoutMs", 5000))).build();
+	}
+
+	/*
+	 * True if e is Neo4j aborting a statement that ran past its timeout
+	 */
+	public static boolean isTimeout(Throwable e) {
+		return e instanceof Neo4jException && String.valueOf(((Neo4jException) e).code()).contains("TransactionTimedOut");
+	}
+
+	@Override
+	public int baconNumber(String actorId, String sourceId) {
+		int baconNumber = number(actorId, sourceId, "");
+		return baconNumber < 0 ? NOT_CONNECTED : baconNumber;
+	}
+
+	@Override
+	public int baconNumber(String actorId, String sourceId, int maxDegrees) {
+		if (actorId.equals(sourceId)) {
+			return 0;
+		}
+		// within 0 degrees only the source itself has a path
+		int baconNumber = maxDegrees == 0 ? -1 : number(actorId, sourceId, ".." + 2 * maxDegrees);
+		if (baconNumber >= 0) {
+			return baconNumber;
+		}
+		return notConnected(actorId, sourceId) ? NOT_CONNECTED : BEYOND_BOUND;
+	}
+
+	@Override
+	public List<String> baconPath(String actorId, String sourceId) {
+		return path(actorId, sourceId, "");
+	}
+
+	@Override
+	public List<String> baconPath(String actorId, String sourceId, int maxDegrees) {
+		if (actorId.equals(sourceId)) {
+			return Collections.singletonList(sourceId);
+		}
+		return maxDegrees == 0 ? null : path(actorId, sourceId, ".." + 2 * maxDegrees);
+	}
+
+	/*
+	 * True if either actor has not acted in any movie, the one case a
+	 * single cheap lookup can prove
+	 */
+	@Override
+	public boolean notConnected(String actorId, String sourceId) {
+		try (Session session = driver.session(AccessMode.READ)) {
+			try (Transaction tx = session.beginTransaction(timeout)) {
+				StatementResult result = tx.run("MATCH (a:actor) WHERE a.id IN [$actor1, $actor2]\n"
+						+ "RETURN any(actor IN collect(a) WHERE NOT (actor)-[:ACTED_IN]-()) AS isolated",
+						parameters("actor1", actorId, "actor2", sourceId));
+				return result.next().get("isolated").asBoolean();
+			}
+		}
+	}
+
+	/*
+	 * Length of the shortest path with the given relationship-length range
+	 * (e.g. "..12"), in Bacon numbers, or -1 if there is none
+	 */
+	private int number(String actorId, String sourceId, String hops) {
+		try (Session session = driver.session(AccessMode.READ)) {
+			try (Transaction tx = session.beginTransaction(timeout)) {
+				StatementResult baconCount = tx.run(
+						"MATCH path = shortestPath((a:actor {id: $actor1})-[:ACTED_IN*" + hops + "]-(b:actor {id: $actor2})) RETURN length(path)/2 as baconPathNumber",
+						parameters("actor1", actorId, "actor2", sourceId));
+
+				if (baconCount.hasNext()) {
+					return baconCount.next().get("baconPathNumber").asInt();
+				}
+				return -1;
+			}
+		}
+	}
+
+	private List<String> path(String actorId, String sourceId, String hops) {
+		try (Session session = driver.session(AccessMode.READ)) {
+			try (Transaction tx = session.beginTransaction(timeout)) {
+				StatementResult result = tx.run(
+						"MATCH path = shortestPath((a:actor {id: $actor1})-[:ACTED_IN*" + hops + "]-(b:actor {id: $actor2})) RETURN nodes(path) AS nodes",
+						parameters("actor1", actorId, "actor2", sourceId));
+
+				if (!result.hasNext()) {
+					return null;
+				}
+
+				Record record = result.next();
+				List<Node> nodes = record.get("nodes").asList(node -> node.asNode());
+				List<String> path = new ArrayList<>(nodes.size());
+				for (Node node : nodes) {
+					path.add(node.get("id").asString());
+				}
+				return path.isEmpty() ? null : path;
+			}
+		}
+	}
+
+	/*
+	 * Bounded Bacon number on the async API, or NOT_FOUND if either actor
+	 * does not exist
+	 */
+	public CompletionStage<Integer> baconNumberAsync(AsyncQueries queries, String actorId, String sourceId,
+			int maxDegrees) {
+		return queries.read(search(maxDegrees, "length(path) / 2"), parameters("actor1", actorId, "actor2", sourceId),
+				timeout).thenApply(records -> {
+					Record record = records.get(0);
+					if (!record.get("found").asBoolean()) {
+						return NOT_FOUND;
+					}
+					if (record.get("result").isNull()) {
+						return record.get("isolated").asBoolean() ? NOT_CONNECTED : BEYOND_BOUND;
+					}
+					return record.get("result").asInt();
+				});
+	}
+
+	/*
+	 * Bounded Bacon path on the async API, or null if either actor does not
+	 * exist or there is no path within maxDegrees
+	 */
+	public CompletionStage<List<String>> baconPathAsync(AsyncQueries queries, String actorId, String sourceId,
+			int maxDegrees) {
+		return queries.read(search(maxDegrees, "[node IN nodes(path) | node.id]"),
+				parameters("actor1", actorId, "actor2", sourceId), timeout).thenApply(records -> {
+					Record record = records.get(0);
+					if (!record.get("found").asBoolean() || record.get("result").isNull()) {
+						return null;
+					}
+					return record.get("result").asList(value -> value.asString());
+				});
+	}
+
+	/*
+	 * Why there is no bounded path between two actors, on the async API:
+	 * NOT_FOUND if either does not exist, else NOT_CONNECTED or BEYOND_BOUND
+	 * as for baconNumber
+	 */
+	public CompletionStage<Integer> noPathAsync(AsyncQueries queries, String actorId, String sourceId) {
+		return queries.read("OPTIONAL MATCH (a:actor {id: $actor1})\n"
+				+ "OPTIONAL MATCH (b:actor {id: $actor2})\n"
+				+ "RETURN a IS NOT NULL AND b IS NOT NULL AS found, " + ISOLATED,
+				parameters("actor1", actorId, "actor2", sourceId), timeout).thenApply(records -> {
+					Record record = records.get(0);
+					if (!record.get("found").asBoolean()) {
+						return NOT_FOUND;
+					}
+					return record.get("isolated").asBoolean() ? NOT_CONNECTED : BEYOND_BOUND;
+				});
+	}
+
+	// whether a or b (either may be null) has not acted in any movie
+	private static final String ISOLATED = "(a IS NOT NULL AND NOT (a)-[:ACTED_IN]-())"
+			+ " OR (b IS NOT NULL AND NOT (b)-[:ACTED_IN]-()) AS isolated";
+
+	/*
+	 * One row telling whether both actors exist, whether either has no
+	 * movies, and result computed from the shortest path between them (null
+	 * when there is none)
+	 */
+	private static String search(int maxDegrees, String result) {
+		return "OPTIONAL MATCH (a:actor {id: $actor1})\n"
+				+ "OPTIONAL MATCH (b:actor {id: $actor2})\n"
+				+ shortestPathWithin(maxDegrees, "a, b")
+				+ "RETURN a IS NOT NULL AND b IS NOT NULL AS found, " + ISOLATED + ", CASE WHEN path IS NULL THEN null ELSE "
+				+ result + " END AS result";
+	}
+
+	/*
+	 * Binds path to the shortest path of at most maxDegrees between a and b,
+	 * or null. With a bound of 0 only the source itself has a path, which
+	 * callers answer before searching, so no query runs a *..0 expansion;
+	 * variables lists what that WITH carries over.
+	 */
+	private static String shortestPathWithin(int maxDegrees, String variables) {
+		if (maxDegrees == 0) {
+			return "WITH " + variables + ", null AS path\n";
+		}
+		return "OPTIONAL MATCH path = shortestPath((a)-[:ACTED_IN*.." + 2 * maxDegrees + "]-(b)) WHERE a <> b\n";
+	}
+
+	/*
+	 * Resolves every actor with a single UNWIND statement. Each row's search
+	 * is bounded by maxDegrees, so one actor far from or cut off from the
+	 * source cannot run the whole chunk into the timeout.
+	 */
+	@Override
+	public int[] baconNumbers(List<String> actorIds, String sourceId, int maxDegrees) {
+		int[] numbers = new int[actorIds.size()];
+		Arrays.fill(numbers, NOT_FOUND);
+		try (Session session = driver.session(AccessMode.READ)) {
+			StatementResult result = session.run(new Statement("UNWIND range(0, size($ids) - 1) AS i\n"
+					+ "MATCH (a:actor {id: $ids[i]})\n"
+					+ "OPTIONAL MATCH (b:actor {id: $source})\n"
+					+ shortestPathWithin(maxDegrees, "i, a, b")
+					+ "RETURN i, " + ISOLATED
+					+ ", CASE WHEN a = b THEN 0 WHEN path IS NULL THEN -1 ELSE length(path) / 2 END AS baconNumber",
+					parameters("ids", actorIds, "source", sourceId)), timeout);
+			while (result.hasNext()) {
+				Record record = result.next();
+				int baconNumber = record.get("baconNumber").asInt();
+				if (baconNumber < 0) {
+					baconNumber = record.get("isolated").asBoolean() ? NOT_CONNECTED : BEYOND_BOUND;
+				}
+				numbers[record.get("i").asInt()] = baconNumber;
+			}
+		}
+		return numbers;
+	}
+
+	@Override
+	public List<String> shortestPath(String fromId, String toId) {
+		return baconPath(fromId, toId);
+	}
+
+	@Override
+	public void actorAdded(String actorId) {
+	}
+
+	@Override
+	public void movieAdded(String movieId) {
+	}
+
+	@Override
+	public void relationshipAdded(String actorId, String movieId) {
+	}
+}
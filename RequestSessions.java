@@ -0,0 +1,137 @@
+package ca.yorku.eecs;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Session;
+
+/*
+ * Wraps a Driver so that everything one HTTP request does on its thread
+ * shares a single session per access mode, instead of every helper opening
+ * and closing its own.
+ *
+ * Between begin() and end(), driver.session() and driver.session(AccessMode)
+ * hand out the request's session for that mode; closing it is a no-op and
+ * end() closes it for real. A READ session opened after the request has
+ * written starts from the WRITE session's bookmark, so with a routing
+ * (bolt+routing://) URI a follower serving the read has already seen the
+ * write. Sessions asked for with an explicit bookmark, and sessions opened
+ * outside a request (startup loads, bulk import workers), are not shared.
+ *
+ * A shared session allows one open transaction at a time, so helpers must
+ * not nest session use.
+ */
+public class RequestSessions {
+
+	private static final ThreadLocal<Scope> SCOPE = new ThreadLocal<>();
+
+	private RequestSessions() {
+	}
+
+	public static Driver wrap(Driver driver) {
+		return (Driver) Proxy.newProxyInstance(Driver.class.getClassLoader(), new Class<?>[] { Driver.class },
+				(proxy, method, args) -> {
+					Scope scope = SCOPE.get();
+					if (scope != null && scope.active && method.getName().equals("session")) {
+						if (args == null) {
+							return scope.session(driver, AccessMode.WRITE);
+						}
+						if (args.length == 1 && args[0] instanceof AccessMode) {
+							return scope.session(driver, (AccessMode) args[0]);
+						}
+					}
+					try {
+						return method.invoke(driver, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	/*
+	 * Starts sharing sessions on this thread
+	 */
+	public static void begin() {
+		Scope scope = SCOPE.get();
+		if (scope == null) {
+			scope = new Scope();
+			SCOPE.set(scope);
+		}
+		scope.active = true;
+	}
+
+	/*
+	 * Closes the sessions the request on this thread opened
+	 */
+	public static void end() {
+		Scope scope = SCOPE.get();
+		if (scope == null) {
+			return;
+		}
+		scope.active = false;
+		scope.read = close(scope.read);
+		scope.write = close(scope.write);
+		scope.readBookmark = null;
+	}
+
+	private static Session close(Session session) {
+		if (session != null) {
+			try {
+				session.close();
+			} catch (Exception e) {
+				Log.warn("Could not close request session: " + e);
+			}
+		}
+		return null;
+	}
+
+	private static final class Scope {
+		boolean active;
+		Session read;
+		Session write;
+		Session readView;
+		Session writeView;
+		String readBookmark;
+
+		Session session(Driver driver, AccessMode mode) {
+			if (mode == AccessMode.WRITE) {
+				if (write == null) {
+					write = driver.session(AccessMode.WRITE);
+					writeView = unclosable(write);
+				}
+				return writeView;
+			}
+
+			String bookmark = write == null ? null : write.lastBookmark();
+			if (read != null && bookmark != null && !bookmark.equals(readBookmark)) {
+				// written since the read session started, catch up first
+				read = close(read);
+			}
+			if (read == null) {
+				read = bookmark == null ? driver.session(AccessMode.READ) : driver.session(AccessMode.READ, bookmark);
+				readView = unclosable(read);
+				readBookmark = bookmark;
+			}
+			return readView;
+		}
+	}
+
+	/*
+	 * A view of a request session that ignores close()
+	 */
+	private static Session unclosable(Session session) {
+		return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[] { Session.class },
+				(proxy, method, args) -> {
+					if (method.getName().equals("close") && args == null) {
+						return null;
+					}
+					try {
+						return method.invoke(session, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+}
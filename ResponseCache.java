@@ -0,0 +1,150 @@
+package ca.yorku.eecs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/*
+ * Bounded cache of fully serialized JSON response bodies, keyed by entity
+ * (e.g. "actor:nm0000102"). Used as a read-through cache in front of
+ * getActor / getMovie.
+ *
+ * The cache is split into segments, each an LRU LinkedHashMap with its own
+ * lock and an equal share of the byte budget, so concurrent readers rarely
+ * contend. Writers call invalidate() for exactly the entities they changed.
+ *
+ * To stop a slow reader from caching a response that was built before a
+ * concurrent write, readers take a stamp() before querying the database and
+ * pass it to put(); the put is dropped if the key's segment saw an
+ * invalidation in between.
+ */
+public class ResponseCache {
+
+	private static final int SEGMENTS = 16;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final long maxBytes;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	public ResponseCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(maxBytes / SEGMENTS);
+		}
+	}
+
+	public byte[] get(String key) {
+		Segment segment = segmentFor(key);
+		byte[] body;
+		synchronized (segment) {
+			body = segment.entries.get(key);
+		}
+		if (body == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return body;
+	}
+
+	/*
+	 * Returns a stamp to hand to put() once the response has been built
+	 */
+	public long stamp(String key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.generation;
+		}
+	}
+
+	public void put(String key, byte[] body, long stamp) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			if (segment.generation != stamp || body.length > segment.maxBytes) {
+				return;
+			}
+			byte[] previous = segment.entries.put(key, body);
+			if (previous != null) {
+				segment.bytes -= previous.length;
+			}
+			segment.bytes += body.length;
+
+			Iterator<Map.Entry<String, byte[]>> eldest = segment.entries.entrySet().iterator();
+			while (segment.bytes > segment.maxBytes && eldest.hasNext()) {
+				segment.bytes -= eldest.next().getValue().length;
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	public void invalidate(String key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.generation++;
+			byte[] previous = segment.entries.remove(key);
+			if (previous != null) {
+				segment.bytes -= previous.length;
+			}
+		}
+		invalidations.increment();
+	}
+
+	public void invalidateAll() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.generation++;
+				segment.entries.clear();
+				segment.bytes = 0;
+			}
+		}
+		invalidations.increment();
+	}
+
+	/*
+	 * Hit/miss/eviction counters and current size, for /api/v1/admin/cache
+	 */
+	public JSONObject stats() throws JSONException {
+		long entries = 0;
+		long bytes = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				entries += segment.entries.size();
+				bytes += segment.bytes;
+			}
+		}
+		JSONObject json = new JSONObject();
+		json.put("hits", hits.sum());
+		json.put("misses", misses.sum());
+		json.put("evictions", evictions.sum());
+		json.put("invalidations", invalidations.sum());
+		json.put("entries", entries);
+		json.put("bytes", bytes);
+		json.put("maxBytes", maxBytes);
+		return json;
+	}
+
+	private Segment segmentFor(String key) {
+		int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+	}
+
+	private static final class Segment {
+		final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+		final long maxBytes;
+		long bytes;
+		long generation;
+
+		Segment(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+	}
+}
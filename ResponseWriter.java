@@ -0,0 +1,256 @@
+package ca.yorku.eecs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/*
+ * Writes HTTP responses.
+ *
+ * Strings are encoded to UTF-8 exactly once, into a byte buffer pooled per
+ * thread, so the Content-Length always matches the bytes sent and no
+ * intermediate byte[] is allocated per response. A string whose worst case
+ * would not fit a pooled buffer is encoded with String.getBytes instead, so a
+ * large body costs its own size rather than three times it. Bodies of at least
+ * server.gzipMinBytes bytes (default 1024) are gzipped when the client sends
+ * "Accept-Encoding: gzip"; those are sent with chunked encoding since their
+ * length is not known up front.
+ *
+ * stream() opens a chunked response for payloads too large to build in
+ * memory; the returned Writer encodes UTF-8 straight into the exchange.
+ */
+public final class ResponseWriter {
+
+	private static final int GZIP_MIN_BYTES = Settings.getInt("server.gzipMinBytes", 1024);
+
+	// Largest per-thread buffer; bigger bodies are encoded with String.getBytes
+	private static final int MAX_POOLED_BYTES = 256 * 1024;
+
+	private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+
+	private ResponseWriter() {
+	}
+
+	/*
+	 * Sends a string body with the given status code
+	 */
+	public static void send(HttpExchange request, String data, int restCode) throws IOException {
+		int maxBytes = data.length() * 3;
+		if (maxBytes > MAX_POOLED_BYTES) {
+			// too large to pool: encode to the exact size rather than the worst case
+			send(request, data.getBytes(StandardCharsets.UTF_8), restCode);
+			return;
+		}
+		byte[] buffer = BUFFER.get();
+		if (buffer.length < maxBytes) {
+			buffer = new byte[Math.min(Math.max(maxBytes, buffer.length * 2), MAX_POOLED_BYTES)];
+			BUFFER.set(buffer);
+		}
+		int length = encode(data, buffer, 0);
+		send(request, buffer, length, restCode);
+	}
+
+	/*
+	 * Sends already encoded bytes with the given status code
+	 */
+	public static void send(HttpExchange request, byte[] data, int restCode) throws IOException {
+		send(request, data, data.length, restCode);
+	}
+
+	private static void send(HttpExchange request, byte[] data, int length, int restCode) throws IOException {
+		if (length >= GZIP_MIN_BYTES && acceptsGzip(request)) {
+			try (OutputStream os = gzipStream(request, restCode)) {
+				os.write(data, 0, length);
+			}
+			return;
+		}
+		// -1 tells HttpServer there is no body, 0 would mean chunked
+		request.sendResponseHeaders(restCode, length == 0 ? -1 : length);
+		OutputStream os = request.getResponseBody();
+		os.write(data, 0, length);
+		os.close();
+	}
+
+	/*
+	 * Starts a chunked response and returns a UTF-8 writer over its body,
+	 * gzipped when the client accepts it. Closing the writer ends the
+	 * response.
+	 */
+	public static Writer stream(HttpExchange request, int restCode) throws IOException {
+		OutputStream os;
+		if (acceptsGzip(request)) {
+			os = gzipStream(request, restCode);
+		} else {
+			request.sendResponseHeaders(restCode, 0);
+			os = request.getResponseBody();
+		}
+		return new Utf8Writer(os);
+	}
+
+	/*
+	 * True if the Accept-Encoding header allows gzip (and does not give it
+	 * q=0)
+	 */
+	static boolean acceptsGzip(HttpExchange request) {
+		List<String> values = request.getRequestHeaders().get("Accept-Encoding");
+		if (values == null) {
+			return false;
+		}
+		for (String value : values) {
+			for (String coding : value.split(",")) {
+				String[] parts = coding.split(";");
+				String name = parts[0].trim();
+				if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+					continue;
+				}
+				double q = 1;
+				for (int i = 1; i < parts.length; i++) {
+					String param = parts[i].trim();
+					if (param.startsWith("q=")) {
+						try {
+							q = Double.parseDouble(param.substring(2));
+						} catch (NumberFormatException e) {
+							q = 0;
+						}
+					}
+				}
+				if (q > 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static OutputStream gzipStream(HttpExchange request, int restCode) throws IOException {
+		request.getResponseHeaders().set("Content-Encoding", "gzip");
+		request.getResponseHeaders().add("Vary", "Accept-Encoding");
+		request.sendResponseHeaders(restCode, 0);
+		return new GZIPOutputStream(request.getResponseBody(), 8192);
+	}
+
+	/*
+	 * Encodes data as UTF-8 into out starting at offset and returns the end
+	 * offset. out must have room for 3 bytes per char. Unpaired surrogates
+	 * become '?', as String.getBytes would do.
+	 */
+	static int encode(String data, byte[] out, int offset) {
+		int n = data.length();
+		int pos = offset;
+		for (int i = 0; i < n; i++) {
+			char c = data.charAt(i);
+			if (c < 0x80) {
+				out[pos++] = (byte) c;
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(data.charAt(i + 1))) {
+				pos = encodeCodePoint(Character.toCodePoint(c, data.charAt(++i)), out, pos);
+			} else if (Character.isSurrogate(c)) {
+				out[pos++] = (byte) '?';
+			} else {
+				pos = encodeCodePoint(c, out, pos);
+			}
+		}
+		return pos;
+	}
+
+	private static int encodeCodePoint(int cp, byte[] out, int pos) {
+		if (cp < 0x80) {
+			out[pos++] = (byte) cp;
+		} else if (cp < 0x800) {
+			out[pos++] = (byte) (0xC0 | (cp >> 6));
+			out[pos++] = (byte) (0x80 | (cp & 0x3F));
+		} else if (cp < 0x10000) {
+			out[pos++] = (byte) (0xE0 | (cp >> 12));
+			out[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			out[pos++] = (byte) (0x80 | (cp & 0x3F));
+		} else {
+			out[pos++] = (byte) (0xF0 | (cp >> 18));
+			out[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+			out[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			out[pos++] = (byte) (0x80 | (cp & 0x3F));
+		}
+		return pos;
+	}
+
+	/*
+	 * Unsynchronized UTF-8 writer with a fixed encode buffer, written to the
+	 * underlying stream whenever it fills. A high surrogate at the end of one
+	 * write is held until the next so split pairs still encode correctly.
+	 */
+	private static final class Utf8Writer extends Writer {
+		private final OutputStream out;
+		private final byte[] buffer = new byte[8192];
+		private int count;
+		private char pendingHigh;
+
+		Utf8Writer(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(char[] chars, int offset, int length) throws IOException {
+			for (int i = offset; i < offset + length; i++) {
+				put(chars[i]);
+			}
+		}
+
+		@Override
+		public void write(String str, int offset, int length) throws IOException {
+			for (int i = offset; i < offset + length; i++) {
+				put(str.charAt(i));
+			}
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			put((char) c);
+		}
+
+		private void put(char c) throws IOException {
+			if (count + 4 > buffer.length) {
+				out.write(buffer, 0, count);
+				count = 0;
+			}
+			if (pendingHigh != 0) {
+				char high = pendingHigh;
+				pendingHigh = 0;
+				if (Character.isLowSurrogate(c)) {
+					count = encodeCodePoint(Character.toCodePoint(high, c), buffer, count);
+					return;
+				}
+				buffer[count++] = (byte) '?';
+			}
+			if (c < 0x80) {
+				buffer[count++] = (byte) c;
+			} else if (Character.isHighSurrogate(c)) {
+				pendingHigh = c;
+			} else if (Character.isSurrogate(c)) {
+				buffer[count++] = (byte) '?';
+			} else {
+				count = encodeCodePoint(c, buffer, count);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.write(buffer, 0, count);
+			count = 0;
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (pendingHigh != 0) {
+				buffer[count++] = (byte) '?';
+				pendingHigh = 0;
+			}
+			out.write(buffer, 0, count);
+			count = 0;
+			out.close();
+		}
+	}
+}
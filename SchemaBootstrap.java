@@ -0,0 +1,109 @@
+package ca.yorku.eecs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResult;
+
+/*
+ * Creates the schema the queries in Utils rely on, so a cold deployment does
+ * not silently fall back to label scans:
+ *   - uniqueness constraints on actor.id and movie.id (these also index the
+ *     ids, and make the MERGE-based inserts atomic under concurrent writers)
+ *   - an index on actor.nationality for addNationality / getNationality
+ *   - a uniqueness constraint on nationalityLock.nationality, the per
+ *     nationality node addNationality locks so two concurrent calls cannot
+ *     both claim the same nationality
+ *
+ * Every statement is idempotent, so bootstrap() is safe on every start.
+ */
+public final class SchemaBootstrap {
+
+	private static final String[] CONSTRAINTS = {
+			"CREATE CONSTRAINT ON (a:actor) ASSERT a.id IS UNIQUE",
+			"CREATE CONSTRAINT ON (m:movie) ASSERT m.id IS UNIQUE",
+			"CREATE CONSTRAINT ON (l:nationalityLock) ASSERT l.nationality IS UNIQUE" };
+
+	private static final String[] INDEXES = {
+			"CREATE INDEX ON :actor(nationality)" };
+
+	private SchemaBootstrap() {
+	}
+
+	/*
+	 * Creates the constraints and indexes, waits up to schema.awaitSeconds
+	 * (default 300) for them to come online and logs their state
+	 */
+	public static void bootstrap(Driver driver) {
+		for (String statement : CONSTRAINTS) {
+			run(driver, statement);
+		}
+		for (String statement : INDEXES) {
+			run(driver, statement);
+		}
+
+		int awaitSeconds = Settings.getInt("schema.awaitSeconds", 300);
+		long start = System.currentTimeMillis();
+		try (Session session = driver.session()) {
+			session.run("CALL db.awaitIndexes(" + awaitSeconds + ")").consume();
+			Log.info("Schema online after " + (System.currentTimeMillis() - start) + " ms");
+		} catch (Exception e) {
+			Log.warn("Indexes not online after " + awaitSeconds + "s: " + e.getMessage());
+		}
+
+		try {
+			JSONArray indexes = indexStatus(driver);
+			for (int i = 0; i < indexes.length(); i++) {
+				Log.info("Index " + indexes.get(i));
+			}
+		} catch (Exception e) {
+			Log.warn("Could not read index status: " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Returns one JSON object per index with its description, state and
+	 * population progress, as reported by db.indexes()
+	 */
+	public static JSONArray indexStatus(Driver driver) throws JSONException {
+		JSONArray indexes = new JSONArray();
+		try (Session session = driver.session()) {
+			StatementResult result = session.run("CALL db.indexes()");
+			while (result.hasNext()) {
+				Record record = result.next();
+				JSONObject index = new JSONObject();
+				// Column names vary between Neo4j versions, so copy what is there
+				for (Map.Entry<String, Object> column : record.asMap().entrySet()) {
+					Object value = column.getValue();
+					index.put(column.getKey(), value instanceof Iterable ? new JSONArray(toList(value)) : value);
+				}
+				indexes.put(index);
+			}
+		}
+		return indexes;
+	}
+
+	private static List<Object> toList(Object iterable) {
+		List<Object> list = new ArrayList<>();
+		for (Object item : (Iterable<?>) iterable) {
+			list.add(item);
+		}
+		return list;
+	}
+
+	private static void run(Driver driver, String statement) {
+		try (Session session = driver.session()) {
+			session.run(statement).consume();
+		} catch (Exception e) {
+			// e.g. duplicate ids already in the database
+			Log.warn("Could not apply schema (" + statement + "): " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package ca.yorku.eecs;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Executor handed to the HttpServer so requests are not all serialized on the
+ * dispatcher thread.
+ *
+ * Settings (system property or environment variable):
+ *   server.executor  fixed (default), workstealing or virtual (JDK 21+)
+ *   server.poolSize  worker threads for fixed / workstealing
+ *   server.backlog   requests allowed to wait for a worker
+ *
+ * The socket's own accept queue is server.acceptBacklog (App), 0 for the
+ * system default: connections not yet accepted, before any admission
+ * decision.
+ *
+ * Admission control: at most poolSize + backlog requests are admitted at
+ * once. A request over that limit is handed to a single rejection thread with
+ * rejected() set, so the handler can answer 503 without doing any work and
+ * without a slow client stalling the dispatcher. When the rejection thread
+ * is itself REJECTION_BACKLOG requests behind, the request runs on the
+ * dispatcher with dropped() set too, and the handler closes the exchange
+ * without writing anything.
+ */
+public final class ServerExecutor implements Executor {
+
+	// TRUE while answering a rejected request, FALSE while dropping one
+	private static final ThreadLocal<Boolean> REJECTED = new ThreadLocal<>();
+
+	private static final int REJECTION_BACKLOG = 64;
+
+	private final ExecutorService delegate;
+	private final ThreadPoolExecutor rejections = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(REJECTION_BACKLOG), runnable -> {
+				Thread thread = new Thread(runnable, "http-rejections");
+				thread.setDaemon(true);
+				return thread;
+			});
+	private final Semaphore admitted;
+	private final String description;
+
+	private ServerExecutor(ExecutorService delegate, int limit, String description) {
+		this.delegate = delegate;
+		this.admitted = new Semaphore(limit);
+		this.description = description;
+	}
+
+	public static ServerExecutor fromSettings() {
+		String mode = Settings.get("server.executor", "fixed").toLowerCase();
+		int poolSize = poolSize();
+		int backlog = Settings.getInt("server.backlog", 1000);
+		int limit = poolSize + backlog;
+
+		if (mode.equals("virtual")) {
+			ExecutorService virtual = newVirtualThreadExecutor();
+			if (virtual != null) {
+				return new ServerExecutor(virtual, limit, "virtual threads, " + limit + " in flight");
+			}
+			Log.warn("Virtual threads need JDK 21+, using a fixed pool instead");
+		} else if (mode.equals("workstealing")) {
+			return new ServerExecutor(Executors.newWorkStealingPool(poolSize), limit,
+					"work-stealing pool of " + poolSize + ", backlog " + backlog);
+		}
+
+		ThreadPoolExecutor fixed = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(Math.max(backlog, 1)), new WorkerThreadFactory());
+		return new ServerExecutor(fixed, limit, "fixed pool of " + poolSize + ", backlog " + backlog);
+	}
+
+	/*
+	 * Worker threads for fixed / workstealing: server.poolSize, by default four
+	 * per CPU and at least 8
+	 */
+	public static int poolSize() {
+		return Settings.getInt("server.poolSize", Math.max(8, Runtime.getRuntime().availableProcessors() * 4));
+	}
+
+	/*
+	 * True while running a request that was turned away by admission control
+	 */
+	public static boolean rejected() {
+		return REJECTED.get() != null;
+	}
+
+	/*
+	 * True while running a rejected request that should not even get a 503,
+	 * because the rejection thread is too far behind
+	 */
+	public static boolean dropped() {
+		return Boolean.FALSE.equals(REJECTED.get());
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if (!admitted.tryAcquire()) {
+			runRejected(task);
+			return;
+		}
+		try {
+			delegate.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					admitted.release();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			admitted.release();
+			runRejected(task);
+		}
+	}
+
+	public void shutdown() {
+		delegate.shutdown();
+		rejections.shutdown();
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+	private void runRejected(Runnable task) {
+		try {
+			rejections.execute(() -> run(task, Boolean.TRUE));
+		} catch (RejectedExecutionException e) {
+			run(task, Boolean.FALSE);
+		}
+	}
+
+	private static void run(Runnable task, Boolean answer) {
+		REJECTED.set(answer);
+		try {
+			task.run();
+		} finally {
+			REJECTED.remove();
+		}
+	}
+
+	/*
+	 * Looked up reflectively so the server still builds and runs on JDK 17
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static final class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "http-worker-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
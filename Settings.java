@@ -0,0 +1,33 @@
+package ca.yorku.eecs;
+
+/*
+ * Reads server settings from system properties, falling back to environment
+ * variables. A key such as "bacon.engine" is looked up as -Dbacon.engine=...
+ * first and then as the environment variable BACON_ENGINE.
+ */
+public final class Settings {
+
+	private Settings() {
+	}
+
+	public static String get(String key, String defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			value = System.getenv(key.toUpperCase().replace('.', '_'));
+		}
+		return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+	}
+
+	public static int getInt(String key, int defaultValue) {
+		String value = get(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			Log.warn("Ignoring invalid value for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package ca.yorku.eecs;
+
+import java.util.Arrays;
+
+/*
+ * BFS tree of the actor/movie graph rooted at one source node: the hop
+ * distance from the source and the parent pointer towards the source for
+ * every node. Distances are in graph hops, so an actor's Bacon number is
+ * distance / 2.
+ *
+ * When an edge is added the tree is repaired in place by relaxing outwards
+ * from the endpoint whose distance drops; adding edges can only shorten
+ * paths, so nothing else has to be revisited.
+ *
+ * Callers hold the graph's read lock for lookups and its write lock for
+ * edgeAdded.
+ */
+public class ShortestPathTree {
+
+	public static final int UNREACHED = Integer.MAX_VALUE;
+
+	private final int source;
+	private int[] dist;
+	private int[] parent;
+	private int[] queue = new int[16];
+
+	private ShortestPathTree(int source, int capacity) {
+		this.source = source;
+		this.dist = new int[capacity];
+		this.parent = new int[capacity];
+		Arrays.fill(dist, UNREACHED);
+		Arrays.fill(parent, -1);
+	}
+
+	/*
+	 * Runs a full BFS from source over the current graph
+	 */
+	public static ShortestPathTree build(ActorMovieGraph graph, int source) {
+		ShortestPathTree tree = new ShortestPathTree(source, Math.max(graph.size(), 1));
+		tree.dist[source] = 0;
+		tree.parent[source] = source;
+		tree.relaxFrom(graph, source);
+		tree.queue = new int[16]; // only needed again for repairs
+		return tree;
+	}
+
+	/*
+	 * Restores a tree saved by GraphSnapshot
+	 */
+	static ShortestPathTree restore(int source, int[] dist, int[] parent) {
+		ShortestPathTree tree = new ShortestPathTree(source, 0);
+		tree.dist = dist;
+		tree.parent = parent;
+		return tree;
+	}
+
+	public int source() {
+		return source;
+	}
+
+	/*
+	 * Hop distance from node to the source, or UNREACHED
+	 */
+	public int distance(int node) {
+		return node < dist.length ? dist[node] : UNREACHED;
+	}
+
+	/*
+	 * Next node towards the source, or -1 if node is not reachable
+	 */
+	int parent(int node) {
+		return node < parent.length ? parent[node] : -1;
+	}
+
+	/*
+	 * Nodes on the tree path from node to the source (both included), or null
+	 * if node is not reachable
+	 */
+	public int[] pathFrom(int node) {
+		int d = distance(node);
+		if (d == UNREACHED) {
+			return null;
+		}
+		int[] path = new int[d + 1];
+		for (int i = 0; i <= d; i++) {
+			path[i] = node;
+			node = parent[node];
+		}
+		return path;
+	}
+
+	/*
+	 * Repairs the tree after the undirected edge (u, v) was added to the graph
+	 */
+	public void edgeAdded(ActorMovieGraph graph, int u, int v) {
+		ensureCapacity(graph.size());
+		if (relax(u, v)) {
+			relaxFrom(graph, v);
+		} else if (relax(v, u)) {
+			relaxFrom(graph, u);
+		}
+	}
+
+	/*
+	 * Approximate heap footprint of the distance and parent arrays
+	 */
+	public long sizeInBytes() {
+		return 2L * 4 * dist.length + queue.length * 4L + 64;
+	}
+
+	private boolean relax(int from, int to) {
+		if (dist[from] != UNREACHED && dist[from] + 1 < dist[to]) {
+			dist[to] = dist[from] + 1;
+			parent[to] = from;
+			return true;
+		}
+		return false;
+	}
+
+	/*
+	 * BFS from start, lowering the distance of every node that can now be
+	 * reached more cheaply through it
+	 */
+	private void relaxFrom(ActorMovieGraph graph, int start) {
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+
+		while (head < tail) {
+			int u = queue[head++];
+			for (int e = graph.csrStart(u), end = graph.csrEnd(u); e < end; e++) {
+				int v = graph.csrNeighbor(e);
+				if (relax(u, v)) {
+					tail = enqueue(tail, v);
+				}
+			}
+			for (int i = 0, end = graph.deltaDegree(u); i < end; i++) {
+				int v = graph.deltaNeighbor(u, i);
+				if (relax(u, v)) {
+					tail = enqueue(tail, v);
+				}
+			}
+		}
+	}
+
+	private int enqueue(int tail, int node) {
+		if (tail == queue.length) {
+			queue = Arrays.copyOf(queue, tail * 2);
+		}
+		queue[tail] = node;
+		return tail + 1;
+	}
+
+	private void ensureCapacity(int size) {
+		if (size > dist.length) {
+			int old = dist.length;
+			int capacity = Math.max(size, old * 2);
+			dist = Arrays.copyOf(dist, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+			Arrays.fill(dist, old, capacity, UNREACHED);
+			Arrays.fill(parent, old, capacity, -1);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package ca.yorku.eecs;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Bounded LRU cache of BFS trees for source actors other than the root, so
+ * "degrees of X" queries for popular actors are answered from memory.
+ *
+ * Every tree is charged its array footprint (ShortestPathTree.sizeInBytes)
+ * and least recently used trees are evicted until the total fits within
+ * maxBytes. A cache created with maxBytes 0 is sized by fitTo() once the
+ * graph is loaded, to hold AUTO_TREES trees of that graph. New edges are
+ * repaired into every cached tree with edgeAdded(), like the root tree.
+ */
+public class ShortestPathTreeCache {
+
+	// trees an automatically sized cache holds, within AUTO_HEAP_SHARE of the heap
+	private static final int AUTO_TREES = 4;
+	private static final double AUTO_HEAP_SHARE = 0.25;
+	private static final long MIN_AUTO_BYTES = 64L * 1024 * 1024;
+
+	private long maxBytes;
+	private final boolean auto;
+	private boolean warnedTooLarge;
+	private final LinkedHashMap<Integer, ShortestPathTree> trees = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<Integer, Long> sizes = new HashMap<>();
+	private long usedBytes;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/*
+	 * A cache of at most maxBytes, or sized by fitTo() if maxBytes is 0
+	 */
+	public ShortestPathTreeCache(long maxBytes) {
+		this.auto = maxBytes <= 0;
+		this.maxBytes = auto ? MIN_AUTO_BYTES : maxBytes;
+	}
+
+	/*
+	 * Sizes an automatic cache for a graph of the given node count: room for
+	 * AUTO_TREES trees, but no more than AUTO_HEAP_SHARE of the maximum heap
+	 * and no less than 64 MB. A cache with an explicit size is left alone.
+	 */
+	public synchronized void fitTo(int nodes) {
+		if (!auto) {
+			return;
+		}
+		long treeBytes = 2L * 4 * nodes + 64;
+		long heapShare = (long) (Runtime.getRuntime().maxMemory() * AUTO_HEAP_SHARE);
+		maxBytes = Math.max(MIN_AUTO_BYTES, Math.min(AUTO_TREES * treeBytes, heapShare));
+		warnedTooLarge = false;
+		evictTo(maxBytes);
+		Log.info(String.format("Tree cache sized to %d MB for %d nodes (%d trees)", maxBytes >> 20, nodes,
+				maxBytes / treeBytes));
+	}
+
+	public synchronized ShortestPathTree get(int source) {
+		ShortestPathTree tree = trees.get(source);
+		if (tree == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return tree;
+	}
+
+	/*
+	 * Caches the tree, evicting least recently used trees to make room. Trees
+	 * larger than the whole budget are not cached.
+	 */
+	public synchronized void put(ShortestPathTree tree) {
+		long size = tree.sizeInBytes();
+		if (size > maxBytes) {
+			if (!warnedTooLarge) {
+				warnedTooLarge = true;
+				Log.warn(String.format("BFS trees of %d MB do not fit the %d MB tree cache and are not cached;"
+						+ " raise bacon.treeCacheMb", size >> 20, maxBytes >> 20));
+			}
+			return;
+		}
+		if (trees.containsKey(tree.source())) {
+			return;
+		}
+
+		evictTo(maxBytes - size);
+		trees.put(tree.source(), tree);
+		sizes.put(tree.source(), size);
+		usedBytes += size;
+	}
+
+	/*
+	 * Repairs every cached tree after the edge (u, v) was added. Caller
+	 * holds the graph's write lock.
+	 */
+	public synchronized void edgeAdded(ActorMovieGraph graph, int u, int v) {
+		for (ShortestPathTree tree : trees.values()) {
+			tree.edgeAdded(graph, u, v);
+			long size = tree.sizeInBytes();
+			usedBytes += size - sizes.put(tree.source(), size);
+		}
+		evictTo(maxBytes);
+	}
+
+	public synchronized void invalidateAll() {
+		trees.clear();
+		sizes.clear();
+		usedBytes = 0;
+	}
+
+	public synchronized int size() {
+		return trees.size();
+	}
+
+	public synchronized long usedBytes() {
+		return usedBytes;
+	}
+
+	public synchronized long maxBytes() {
+		return maxBytes;
+	}
+
+	/*
+	 * Evicts least recently used trees until at most budget bytes are used
+	 */
+	private void evictTo(long budget) {
+		Iterator<Map.Entry<Integer, ShortestPathTree>> eldest = trees.entrySet().iterator();
+		while (usedBytes > budget && eldest.hasNext()) {
+			Integer source = eldest.next().getKey();
+			eldest.remove();
+			usedBytes -= sizes.remove(source);
+			evictions++;
+		}
+	}
+
+	public synchronized String toString() {
+		return String.format("%d trees, %d/%d bytes, %d hits, %d misses, %d evictions", trees.size(), usedBytes,
+				maxBytes, hits, misses, evictions);
+	}
+}
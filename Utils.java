@@ -4,32 +4,47 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.neo4j.driver.v1.AccessMode;
 import org.neo4j.driver.v1.AuthTokens;
 import org.neo4j.driver.v1.Config;
 import org.neo4j.driver.v1.Driver;
 import org.neo4j.driver.v1.GraphDatabase;
-import org.neo4j.driver.v1.Record;
 
 import com.sun.net.httpserver.HttpExchange;
 import static org.neo4j.driver.v1.Values.parameters;
+import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.StatementResult;
 import org.neo4j.driver.v1.Session;
 import org.neo4j.driver.v1.Transaction;
 import org.neo4j.driver.v1.Value;
-import org.neo4j.driver.v1.types.Node;
 import org.neo4j.driver.v1.types.Path;
 import org.neo4j.driver.v1.types.Relationship;
 
@@ -37,24 +52,175 @@ public class Utils {
 
 	private Driver driver;
 	private String uriDb;
-	private boolean databaseConfigured = false;
+	private volatile boolean databaseConfigured = false;
+	private volatile BaconEngine baconEngine;
+	private volatile NationalityIndex nationalityIndex;
+	private ResponseCache entityCache;
+	private ResponseCache negativeCache;
+	private String baconId;
+	// set once the default Bacon actor is known to exist
+	private volatile boolean baconIdExists;
+	private final Metrics metrics = new Metrics();
+
+	// Endpoint names reported in metrics; anything else is counted as "other"
+	private static final List<String> ENDPOINTS = Arrays.asList("addActor", "addMovie", "addRelationship",
+			"addNationality", "bulkImport", "getActor", "getMovie", "hasRelationship", "getNationality",
+			"computeBaconNumber", "computeBaconPath", "computeDegrees", "computeNationalityWithinBacon", "admin/schema", "admin/cache", "admin/snapshot", "metrics",
+			"componentStats", "batch/computeBaconNumber", "batch/getActor");
+
+	// Ids resolved per database round trip / engine sweep in batch requests
+	private static final int BATCH_CHUNK = 1000;
+
+	// server.async: GET endpoints that can complete off the request thread
+	private static final List<String> ASYNC_ENDPOINTS = Arrays.asList("getActor", "getMovie", "computeBaconNumber",
+			"computeBaconPath");
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+	private Driver asyncDriver;
+	private ExecutorService asyncResponder;
+	private Semaphore asyncInFlight;
+
+	// write.behind: group-commits the add* writes, null when off
+	private volatile WriteBehindQueue writeQueue;
+
+	// add* writes hold the read side from commit through their in-memory
+	// updates; bulkImport holds the write side while it swaps in a new engine
+	private final ReentrantReadWriteLock writeGate = new ReentrantReadWriteLock(true);
+
+	/*
+	 * Creates a Neo4j driver from the neo4j.* settings:
+	 *
+	 *   neo4j.uri                       bolt://localhost:7687, or bolt+routing://host:7687
+	 *                                   for a cluster, so READ sessions go to followers
+	 *   neo4j.user, neo4j.password      neo4j / 12345678
+	 *   neo4j.encrypted                 false
+	 *   neo4j.maxPoolSize               connections per server (100)
+	 *   neo4j.acquisitionTimeoutMs      wait for a free pooled connection (60000)
+	 *   neo4j.maxConnectionLifetimeMs   recycle connections after this long (3600000)
+	 *   neo4j.connectionTimeoutMs       TCP connect timeout (5000)
+	 *
+	 * The 1.7 driver streams every result in full and has no fetch size
+	 * setting; use ?limit= paging or the streaming endpoints for big results.
+	 */
+	public static Driver connect() {
+		Config.ConfigBuilder config = Config.builder()
+				.withMaxConnectionPoolSize(maxPoolSize())
+				.withConnectionAcquisitionTimeout(Settings.getInt("neo4j.acquisitionTimeoutMs", 60000), TimeUnit.MILLISECONDS)
+				.withMaxConnectionLifetime(Settings.getInt("neo4j.maxConnectionLifetimeMs", 3600000), TimeUnit.MILLISECONDS)
+				.withConnectionTimeout(Settings.getInt("neo4j.connectionTimeoutMs", 5000), TimeUnit.MILLISECONDS);
+		if (Boolean.parseBoolean(Settings.get("neo4j.encrypted", "false"))) {
+			config.withEncryption();
+		} else {
+			config.withoutEncryption();
+		}
+		return GraphDatabase.driver(Settings.get("neo4j.uri", "bolt://localhost:7687"),
+				AuthTokens.basic(Settings.get("neo4j.user", "neo4j"), Settings.get("neo4j.password", "12345678")),
+				config.build());
+	}
+
+	private static int maxPoolSize() {
+		return Settings.getInt("neo4j.maxPoolSize", 100);
+	}
 
 	/*
 	 * Constructor for setting up the Neo4j driver
 	 */
-	public void setUp() {
-		uriDb = "bolt://localhost:7687";
-		Config config = Config.builder().withoutEncryption().build();
-		driver = GraphDatabase.driver(uriDb, AuthTokens.basic("neo4j", "12345678"), config);
+	public synchronized void setUp() {
+		if (databaseConfigured) {
+			return;
+		}
+		uriDb = Settings.get("neo4j.uri", "bolt://localhost:7687");
+		metrics.setMaxPoolSize(maxPoolSize());
+		Driver instrumented = InstrumentedDriver.wrap(connect(), metrics);
+		driver = RequestSessions.wrap(instrumented);
+		if (Boolean.parseBoolean(Settings.get("server.async", "false"))) {
+			asyncDriver = instrumented;
+			asyncResponder = Executors.newFixedThreadPool(
+					Settings.getInt("server.asyncWorkers", Runtime.getRuntime().availableProcessors()), r -> {
+						Thread thread = new Thread(r, "async-responder");
+						thread.setDaemon(true);
+						return thread;
+					});
+			asyncInFlight = new Semaphore(Settings.getInt("server.asyncMaxInFlight", 10000));
+			Log.info("Async request pipeline enabled for " + ASYNC_ENDPOINTS);
+		}
+		if (Boolean.parseBoolean(Settings.get("write.behind", "false"))) {
+			writeQueue = new WriteBehindQueue(instrumented, metrics);
+			metrics.setWriteQueue(writeQueue);
+			Log.info("Write-behind group commit enabled for add* writes");
+		}
+		SchemaBootstrap.bootstrap(driver);
+		entityCache = new ResponseCache(Settings.getInt("cache.entityMb", 32) * 1024L * 1024L);
+		negativeCache = new ResponseCache(Settings.getInt("cache.negativeMb", 4) * 1024L * 1024L);
+		baconId = Settings.get("bacon.sourceId", "nm0000102");
+		baconEngine = createBaconEngine(false);
+		nationalityIndex = createNationalityIndex();
 		databaseConfigured = true;
 	}
 
+	/*
+	 * Picks the shortest-path backend. The in-memory graph is used unless
+	 * bacon.engine=neo4j is set or the graph cannot be loaded. With
+	 * bacon.snapshot=<file> the graph starts from that snapshot and its
+	 * graph log unless fromDatabase is set (see InMemoryBaconEngine.open).
+	 */
+	private BaconEngine createBaconEngine(boolean fromDatabase) {
+		if (Settings.get("bacon.engine", "memory").equalsIgnoreCase("neo4j")) {
+			return new Neo4jBaconEngine(driver);
+		}
+		try {
+			// unset: sized for a few trees of the loaded graph (ShortestPathTreeCache.fitTo)
+			long cacheBytes = Settings.getInt("bacon.treeCacheMb", 0) * 1024L * 1024L;
+			String snapshot = Settings.get("bacon.snapshot", "");
+			if (!snapshot.isEmpty()) {
+				return InMemoryBaconEngine.open(driver, baconId, new ShortestPathTreeCache(cacheBytes),
+						Paths.get(snapshot), fromDatabase);
+			}
+			return InMemoryBaconEngine.load(driver, baconId, new ShortestPathTreeCache(cacheBytes));
+		} catch (Exception e) {
+			Log.error("Could not load graph into memory, falling back to Neo4j", e);
+			return new Neo4jBaconEngine(driver);
+		}
+	}
+
+	/*
+	 * Loads the in-memory nationality index, or returns null to answer
+	 * nationality queries from Neo4j when nationality.index=neo4j is set or
+	 * the index cannot be loaded
+	 */
+	private NationalityIndex createNationalityIndex() {
+		if (Settings.get("nationality.index", "memory").equalsIgnoreCase("neo4j")) {
+			return null;
+		}
+		try {
+			return NationalityIndex.load(driver);
+		} catch (Exception e) {
+			Log.error("Could not load nationality index, falling back to Neo4j", e);
+			return null;
+		}
+	}
+
 	/*
 	 * Main handler method to handle incoming HTTP requests
 	 */
 	public void handle(HttpExchange request) throws IOException {
 
+		long start = System.nanoTime();
+		String endpoint = endpointName(request);
+		boolean completesLater = false;
+		metrics.beginRequest(endpoint);
+		// one Neo4j session per access mode for the whole request
+		RequestSessions.begin();
 		try {
+			// Turned away by ServerExecutor because too many requests are queued
+			if (ServerExecutor.dropped()) {
+				request.close();
+				return;
+			}
+			if (ServerExecutor.rejected()) {
+				sendString(request, "Server busy\n", 503);
+				return;
+			}
+
 			// If the Neo4j driver is not set up, set it up
 			if (!databaseConfigured) {
 				setUp();
@@ -62,17 +228,140 @@ public class Utils {
 			// Check the request method (PUT or GET) and handle accordingly
 			if (request.getRequestMethod().equals("PUT")) {
 				handlePut(request);
-				System.out.println("put");
 			} else if (request.getRequestMethod().equals("GET")) {
+				if (asyncDriver != null && ASYNC_ENDPOINTS.contains(endpoint)
+						&& handleGetAsync(request, endpoint, start)) {
+					completesLater = true;
+					return;
+				}
 				handleGet(request);
-				System.out.println("get");
+			} else if (request.getRequestMethod().equals("POST")) {
+				handlePost(request);
 			} else
 				sendString(request, "Unimplemented method\n", 501);
 		} catch (Exception e) {
-			e.printStackTrace();
+			Log.error("Unhandled error in " + endpoint, e);
 			sendString(request, "Server error\n", 500);
+		} finally {
+			RequestSessions.end();
+			if (!completesLater) {
+				long nanos = System.nanoTime() - start;
+				metrics.endRequest(request.getResponseCode(), nanos);
+				Log.access(request.getRequestMethod(), endpoint, request.getResponseCode(), nanos);
+			}
+		}
+
+	}
+
+	/*
+	 * Starts a GET on the async pipeline (server.async=true). The handler
+	 * thread returns as soon as the Neo4j statement is sent; the response is
+	 * written by asyncResponder when the result arrives, and metrics and the
+	 * access log are recorded then.
+	 *
+	 * Returns false, having done nothing, when the request should take the
+	 * blocking path instead: forms the async handlers do not cover, or more
+	 * than server.asyncMaxInFlight (10000) async requests already pending.
+	 */
+	private boolean handleGetAsync(HttpExchange request, String endpoint, long start) throws IOException {
+		if (!asyncInFlight.tryAcquire()) {
+			return false;
+		}
+		Metrics.Request metricsRequest = metrics.detach();
+		AsyncQueries queries = new AsyncQueries(asyncDriver, metrics, metricsRequest);
+		CompletionStage<Void> response;
+		try {
+			if (endpoint.equals("getActor")) {
+				response = getActorAsync(request, queries);
+			} else if (endpoint.equals("getMovie")) {
+				response = getMovieAsync(request, queries);
+			} else if (endpoint.equals("computeBaconNumber")) {
+				response = computeBaconNumberAsync(request, queries);
+			} else {
+				response = computeBaconPathAsync(request, queries);
+			}
+		} catch (Exception e) {
+			CompletableFuture<Void> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			response = failed;
+		}
+
+		if (response == null) {
+			metrics.attach(metricsRequest);
+			asyncInFlight.release();
+			return false;
 		}
 
+		response.whenComplete((ignored, error) -> {
+			try {
+				if (error != null) {
+					failAsync(request, endpoint, error);
+				}
+			} finally {
+				asyncInFlight.release();
+				long nanos = System.nanoTime() - start;
+				metrics.endRequest(metricsRequest, request.getResponseCode(), nanos);
+				Log.access(request.getRequestMethod(), endpoint, request.getResponseCode(), nanos);
+			}
+		});
+		return true;
+	}
+
+	/*
+	 * Answers an async request whose statement or response failed, with the
+	 * same status the blocking handler would have used
+	 */
+	private static void failAsync(HttpExchange request, String endpoint, Throwable error) {
+		Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		try {
+			if (Neo4jBaconEngine.isTimeout(cause)) {
+				sendString(request, "Query timed out\n", 503);
+			} else if (cause instanceof JSONException) {
+				sendString(request, "", 400);
+			} else {
+				Log.error(endpoint + " failed", cause);
+				sendString(request, "", 500);
+			}
+		} catch (IOException e) { // response already started, or the client went away
+			request.close();
+		}
+	}
+
+	/*
+	 * Sends the response for a completed async result
+	 */
+	private interface AsyncResponse<T> {
+		void send(T result) throws Exception;
+	}
+
+	/*
+	 * Runs response on asyncResponder once stage completes, keeping blocking
+	 * socket writes off the driver's event loop threads
+	 */
+	private <T> CompletionStage<Void> respond(CompletionStage<T> stage, AsyncResponse<T> response) {
+		return stage.thenAcceptAsync(result -> {
+			try {
+				response.send(result);
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, asyncResponder);
+	}
+
+	/*
+	 * Maps the request path to the endpoint name used as a metrics label,
+	 * keeping the label set bounded whatever paths clients send
+	 */
+	private static String endpointName(HttpExchange request) {
+		String path = request.getRequestURI().getPath();
+		int i = path.indexOf("/api/v1/");
+		if (i >= 0) {
+			String name = path.substring(i + "/api/v1/".length());
+			if (ENDPOINTS.contains(name)) {
+				return name;
+			}
+		}
+		return "other";
 	}
 
 	/*
@@ -100,6 +389,14 @@ public class Utils {
 			addNationality(request);
 		}
 
+		else if (uri.contains("/api/v1/bulkImport")) {
+			bulkImport(request);
+		}
+
+		else if (uri.contains("/api/v1/admin/snapshot")) {
+			writeSnapshot(request);
+		}
+
 		else {
 			sendString(request, "Bad Request\n", 400);
 		}
@@ -138,6 +435,51 @@ public class Utils {
 			computeBaconPath(request);
 		}
 
+		else if (uri.contains("/api/v1/computeDegrees")) {
+			computeDegrees(request);
+		}
+
+		else if (uri.contains("/api/v1/computeNationalityWithinBacon")) {
+			computeNationalityWithinBacon(request);
+		}
+
+		else if (uri.contains("/api/v1/admin/schema")) {
+			getSchema(request);
+		}
+
+		else if (uri.contains("/api/v1/admin/cache")) {
+			getCacheStats(request);
+		}
+
+		else if (uri.contains("/api/v1/metrics")) {
+			getMetrics(request);
+		}
+
+		else if (uri.contains("/api/v1/componentStats")) {
+			getComponentStats(request);
+		}
+
+		else {
+			sendString(request, "Bad Request\n", 400);
+		}
+	}
+
+	/*
+	 * This method maps POST requests to their respective handler
+	 */
+	private void handlePost(HttpExchange request) throws IOException {
+
+		// Extract the exact endpoint from the request URI
+		String uri = request.getRequestURI().toString();
+
+		if (uri.contains("/api/v1/batch/computeBaconNumber")) {
+			batchComputeBaconNumber(request);
+		}
+
+		else if (uri.contains("/api/v1/batch/getActor")) {
+			batchGetActor(request);
+		}
+
 		else {
 			sendString(request, "Bad Request\n", 400);
 		}
@@ -183,35 +525,54 @@ public class Utils {
             status = 500;
         }
 
-        sendString(request, "", status);
+        sendWriteStatus(request, status);
     }
 
+	/*
+	 * Creates the actor unless one with the same id exists, in a single MERGE
+	 * that is atomic under the actor.id uniqueness constraint
+	 */
 	public int insertActor(String name, String actorId) {
 
-		if (actorExists(actorId)) {
-			return 400;
-		}
-
-		try (Session session = driver.session()) {
-			session.writeTransaction(
-					tx -> tx.run("CREATE (a:actor {name:$x, id:$y})", parameters("x", name, "y", actorId)));
-			session.close();
-			return 200; // Actor successfully added
+		try {
+			return runWrite("MERGE (a:actor {id: $y})\n"
+					+ "ON CREATE SET a.name = $x, a._new = true\n"
+					+ "WITH a, coalesce(a._new, false) AS created\n"
+					+ "REMOVE a._new\n"
+					+ "RETURN CASE WHEN created THEN 200 ELSE 400 END AS status",
+					parameters("x", name, "y", actorId), record -> {
+						if (record.get("status").asInt() == 200) {
+							baconEngine.actorAdded(actorId);
+							entityCache.invalidate("actor:" + actorId);
+						}
+					}); // 200 if added, 400 if the actor already exists
+		} catch (WriteBehindQueue.Busy e) {
+			return e.status();
 		} catch (Exception e) {
 			return 500; // Actor insertion failed
 		}
 	}
-	
-	public int insertActorNationality(String name, String actorId, String nationality) {
 
-        if (actorExists(actorId)) {
-            return 400;
-        }
+	public int insertActorNationality(String name, String actorId, String nationality) {
 
-        try (Session session = driver.session()) {
-            session.writeTransaction(tx -> tx.run("CREATE (a:actor {name:$x, id:$y, nationality: $n})", parameters("x", name, "y", actorId, "n", nationality)));
-            session.close();
-            return 200; // Actor successfully added
+        try {
+            return runWrite("MERGE (a:actor {id: $y})\n"
+                    + "ON CREATE SET a.name = $x, a.nationality = $n, a._new = true\n"
+                    + "WITH a, coalesce(a._new, false) AS created\n"
+                    + "REMOVE a._new\n"
+                    + "RETURN CASE WHEN created THEN 200 ELSE 400 END AS status",
+                    parameters("x", name, "y", actorId, "n", nationality), record -> {
+                        if (record.get("status").asInt() == 200) {
+                            baconEngine.actorAdded(actorId);
+                            entityCache.invalidate("actor:" + actorId);
+                            NationalityIndex nationalities = nationalityIndex;
+                            if (nationalities != null) {
+                                nationalities.put(actorId, name, nationality);
+                            }
+                        }
+                    }); // 200 if added, 400 if the actor already exists
+        } catch (WriteBehindQueue.Busy e) {
+            return e.status();
         } catch (Exception e) {
             return 500; // Actor insertion failed
         }
@@ -225,13 +586,15 @@ public class Utils {
 	public boolean actorExists(String id) {
 		boolean isPresent = false;
 
-		try (Session session = driver.session()) {
+		try (Session session = driver.session(AccessMode.READ)) {
 			try (Transaction tx = session.beginTransaction()) {
 				StatementResult result = tx.run("MATCH (a:actor) WHERE a.id = $actorId RETURN a",
 						parameters("actorId", id));
 				// isPresent = result.list().size() > 0;
 				isPresent = result.hasNext();
-				System.out.println("THe value of isPresent in actorPresent method: " + isPresent);
+				if (Log.DEBUG) {
+					Log.debug("actorExists " + id + ": " + isPresent);
+				}
 			}
 		}
 
@@ -266,30 +629,35 @@ public class Utils {
 
 		// Server or database connection failed, internal server error
 		catch (Exception e) {
-			e.printStackTrace();
+			Log.error("addMovie failed", e);
 			status = 500;
 		}
 
-		sendString(request, "", status);
+		sendWriteStatus(request, status);
 	}
 
 	public int insertMovie(String name, String movieId) {
 
-		if (movieExists(movieId)) {
-			return 400;
-		}
-
-		try (Session session = driver.session()) {
-			session.writeTransaction(
-					tx -> tx.run("CREATE (m:movie {name:$x, id:$y})", parameters("x", name, "y", movieId)));
-			session.close();
-			return 200; // Actor successfully added
+		try {
+			return runWrite("MERGE (m:movie {id: $y})\n"
+					+ "ON CREATE SET m.name = $x, m._new = true\n"
+					+ "WITH m, coalesce(m._new, false) AS created\n"
+					+ "REMOVE m._new\n"
+					+ "RETURN CASE WHEN created THEN 200 ELSE 400 END AS status",
+					parameters("x", name, "y", movieId), record -> {
+						if (record.get("status").asInt() == 200) {
+							baconEngine.movieAdded(movieId);
+							entityCache.invalidate("movie:" + movieId);
+						}
+					}); // 200 if added, 400 if the movie already exists
+		} catch (WriteBehindQueue.Busy e) {
+			return e.status();
 		} catch (Exception e) {
-			e.printStackTrace();
-			return 500; // Actor insertion failed
+			Log.error("insertMovie failed", e);
+			return 500; // Movie insertion failed
 		}
 	}
-	
+
 	public void addNationality(HttpExchange request) throws IOException {
 
 		String actorId;
@@ -308,7 +676,9 @@ public class Utils {
 			}
 			
 			else {
-				System.out.println("not found");
+				if (Log.DEBUG) {
+					Log.debug("addNationality: missing actorId or nationality");
+				}
 			}
 		}
 
@@ -323,42 +693,59 @@ public class Utils {
 			status = 500;
 		}
 
-		sendString(request, "", status);
+		sendWriteStatus(request, status);
 	}
 
+	/*
+	 * Sets the actor's nationality in one statement: 404 if the actor does not
+	 * exist, 400 if another actor already has this nationality.
+	 *
+	 * The statement first write-locks the nationality's nationalityLock node
+	 * (unique per nationality, see SchemaBootstrap), so concurrent calls for
+	 * the same nationality run the "taken" check one at a time, each seeing
+	 * the one committed before it.
+	 */
 	public int insertNationality(String actorId, String nationality) {
 
-		if (!actorExists(actorId)) {
-			System.out.println("error here");
-			return 404;
-		}
-		
-		else if (nationalityExists(nationality)) {
-			return 400;
-		}
-		
-		else {
-			try (Session session = driver.session()) {
-				session.writeTransaction(
-						tx -> tx.run("MATCH (a:actor {id: $x}) SET a.nationality = $y", parameters("x", actorId, "y", nationality)));
-				session.close();
-				return 200; // Actor successfully added
-			} catch (Exception e) {
-				e.printStackTrace();
-				return 500; // Actor insertion failed
-			}
+		try {
+			return runWrite("MERGE (lock:nationalityLock {nationality: $y})\n"
+					+ "SET lock.locked = true\n"
+					+ "WITH lock\n"
+					+ "OPTIONAL MATCH (a:actor {id: $x})\n"
+					+ "OPTIONAL MATCH (other:actor {nationality: $y})\n"
+					+ "WITH lock, a, count(other) > 0 AS taken\n"
+					+ "REMOVE lock.locked\n"
+					+ "WITH a, taken\n"
+					+ "FOREACH (ignored IN CASE WHEN a IS NULL OR taken THEN [] ELSE [1] END | SET a.nationality = $y)\n"
+					+ "RETURN CASE WHEN a IS NULL THEN 404 WHEN taken THEN 400 ELSE 200 END AS status, a.name AS name",
+					parameters("x", actorId, "y", nationality), record -> {
+						if (record.get("status").asInt() == 200) {
+							entityCache.invalidate("actor:" + actorId);
+							NationalityIndex nationalities = nationalityIndex;
+							if (nationalities != null) {
+								nationalities.put(actorId, record.get("name").asString(), nationality);
+							}
+						}
+					});
+		} catch (WriteBehindQueue.Busy e) {
+			return e.status();
+		} catch (Exception e) {
+			Log.error("insertNationality failed", e);
+			return 500; // Nationality update failed
 		}
 	}
-	
+
 	public boolean nationalityExists(String id) {
 		boolean isPresent = false;
 
-		try (Session session = driver.session()) {
+		try (Session session = driver.session(AccessMode.READ)) {
 			try (Transaction tx = session.beginTransaction()) {
 				StatementResult result = tx.run("MATCH (a:actor) WHERE a.nationality = $nationality RETURN a",
 						parameters("nationality", id)); 
 				isPresent = result.hasNext();
-				System.out.println("Nationality is present: " + isPresent);
+				if (Log.DEBUG) {
+					Log.debug("nationalityExists " + id + ": " + isPresent);
+				}
 			}
 		}
 
@@ -376,7 +763,7 @@ public class Utils {
 	public boolean movieExists(String id) {
 		boolean isPresent = false;
 
-		try (Session session = driver.session()) {
+		try (Session session = driver.session(AccessMode.READ)) {
 			try (Transaction tx = session.beginTransaction()) {
 				StatementResult result = tx.run("MATCH (m:movie) WHERE m.id = $id RETURN m", parameters("id", id));
 				isPresent = result.hasNext();
@@ -416,34 +803,91 @@ public class Utils {
 
 		// Server or database connection failed, internal server error
 		catch (Exception e) {
-			e.printStackTrace();
+			Log.error("addRelationship failed", e);
 			status = 500;
 		}
 
-		sendString(request, "", status);
+		sendWriteStatus(request, status);
 	}
 	
 
+	/*
+	 * Creates the ACTED_IN relationship in one statement: 404 if the actor or
+	 * movie does not exist, 400 if the relationship already exists
+	 */
 	public int insertRelationship(String actorId, String movieId) {
 
-		if (!actorExists(actorId) || !movieExists(movieId)) {
-			return 404;
+		try {
+			return runWrite("OPTIONAL MATCH (a:actor {id: $x})\n"
+					+ "OPTIONAL MATCH (m:movie {id: $y})\n"
+					+ "FOREACH (ignored IN CASE WHEN a IS NULL OR m IS NULL THEN [] ELSE [1] END |\n"
+					+ "  MERGE (a)-[r:ACTED_IN]->(m) ON CREATE SET r._new = true)\n"
+					+ "WITH a, m\n"
+					+ "OPTIONAL MATCH (a)-[r:ACTED_IN]->(m)\n"
+					+ "WITH a, m, r, coalesce(r._new, false) AS created\n"
+					+ "REMOVE r._new\n"
+					+ "RETURN CASE WHEN a IS NULL OR m IS NULL THEN 404 WHEN created THEN 200 ELSE 400 END AS status\n"
+					+ "ORDER BY status LIMIT 1",
+					parameters("x", actorId, "y", movieId), record -> {
+						if (record.get("status").asInt() == 200) {
+							baconEngine.relationshipAdded(actorId, movieId);
+							entityCache.invalidate("actor:" + actorId);
+							entityCache.invalidate("movie:" + movieId);
+							// any new edge can connect actors that had no path before
+							negativeCache.invalidateAll();
+						}
+					});
+		} catch (WriteBehindQueue.Busy e) {
+			return e.status();
+		} catch (Exception e) {
+			Log.error("insertRelationship failed", e);
+			return 400; // Relationship insertion failed
 		}
+	}
 
-		if (relationshipExists(actorId, movieId)) {
-			return 400;
+	/*
+	 * Answers an add* request; a 429 from a full write-behind queue tells
+	 * the client when to retry
+	 */
+	private static void sendWriteStatus(HttpExchange request, int status) throws IOException {
+		if (status == 429) {
+			request.getResponseHeaders().set("Retry-After", "1");
 		}
+		sendString(request, "", status);
+	}
 
-		try (Session session = driver.session()) {
-			session.writeTransaction(tx -> tx.run(
-					"MATCH (a:actor), (m:movie)\n" + "WHERE a.id = $x AND m.id = $y\n"
-							+ "CREATE (a)-[r:ACTED_IN]->(m)\n" + "RETURN type(r)",
-					parameters("x", actorId, "y", movieId))); // do we need to have this return statement??
-			session.close();
-			return 200; // Actor successfully added
-		} catch (Exception e) {
-			e.printStackTrace();
-			return 400; // Actor insertion failed
+	/*
+	 * Runs a conditional write that returns a single status column and
+	 * returns that status once it has committed and onCommit has run
+	 */
+	private int runWrite(String statement, Value params, WriteBehindQueue.OnCommit onCommit) {
+		return runWriteRecord(statement, params, onCommit).get("status").asInt();
+	}
+
+	/*
+	 * Runs a single-row write statement in its own transaction, or with
+	 * write.behind=true queues it for a group commit, and returns the row.
+	 * onCommit updates the in-memory state after the commit; in write-behind
+	 * mode it runs on the writer thread, so those updates happen in commit
+	 * order. Throws WriteBehindQueue.Busy when the queue turns the write
+	 * away. Holds writeGate's read lock throughout, so a bulkImport reload
+	 * cannot start between the commit and onCommit.
+	 */
+	private Record runWriteRecord(String statement, Value params, WriteBehindQueue.OnCommit onCommit) {
+		writeGate.readLock().lock();
+		try {
+			WriteBehindQueue queue = writeQueue;
+			if (queue != null) {
+				return queue.write(statement, params, onCommit);
+			}
+			Record record;
+			try (Session session = driver.session(AccessMode.WRITE)) {
+				record = session.writeTransaction(tx -> tx.run(statement, params).single());
+			}
+			onCommit.apply(record);
+			return record;
+		} finally {
+			writeGate.readLock().unlock();
 		}
 	}
 
@@ -455,7 +899,7 @@ public class Utils {
 	public boolean relationshipExists(String actorId, String movieId) {
 		boolean isPresent = false;
 
-		try (Session session = driver.session()) {
+		try (Session session = driver.session(AccessMode.READ)) {
 			try (Transaction tx = session.beginTransaction()) {
 				StatementResult node_boolean = tx.run(
 						"RETURN EXISTS ((:actor {id: $actorId})-[:ACTED_IN*1]-(:movie {id: $movieId})) AS bool",
@@ -468,78 +912,136 @@ public class Utils {
 	}
 
 	/*
-	 * Method to get the name and ID of the actor, and the list of actors acting in that actor
+	 * Streams an IMDb-style TSV/CSV file from the request body into the
+	 * database in batches (see BulkImporter). The batch size can be set with
+	 * ?batchSize=. The in-memory graph is reloaded once the import is done.
+	 */
+	public void bulkImport(HttpExchange request) throws IOException {
+		String query = request.getRequestURI().getQuery();
+		int batchSize = Settings.getInt("import.batchSize", 10000);
+		int status = 400;
+		String response = "";
+
+		try {
+			if (query != null) {
+				String size = splitQuery(query).get("batchSize");
+				if (size != null) {
+					batchSize = Integer.parseInt(size);
+				}
+			}
+
+			InputStream body = request.getRequestBody();
+			String encoding = request.getRequestHeaders().getFirst("Content-Encoding");
+			if (encoding != null && encoding.equalsIgnoreCase("gzip")) {
+				body = new GZIPInputStream(body);
+			}
+
+			BulkImporter.Stats stats = new BulkImporter(driver, batchSize).importStream(body);
+			// The import bypassed the graph log, so reload from Neo4j. add* writes
+			// wait at the gate until the new engine is in place: one committed
+			// before the reload reads Neo4j is in the new graph, and none can
+			// land on the old engine after that.
+			writeGate.writeLock().lock();
+			try {
+				BaconEngine previous = baconEngine;
+				if (previous instanceof InMemoryBaconEngine) {
+					((InMemoryBaconEngine) previous).closeWal();
+				}
+				baconEngine = createBaconEngine(true);
+				nationalityIndex = createNationalityIndex();
+				entityCache.invalidateAll();
+				negativeCache.invalidateAll();
+			} finally {
+				writeGate.writeLock().unlock();
+			}
+			response = stats.toJson().toString();
+			status = 200;
+		}
+
+		// Unknown file format or bad batchSize
+		catch (IllegalArgumentException | JSONException e) {
+			response = e.getMessage() == null ? "" : e.getMessage() + "\n";
+			status = 400;
+		}
+
+		// Server or database connection failed, internal server error
+		catch (Exception e) {
+			Log.error("bulkImport failed", e);
+			status = 500;
+		}
+
+		sendString(request, response, status);
+	}
+
+	/*
+	 * Method to get the name and ID of the actor, and the list of actors acting in that actor.
+	 * ?limit=&cursor= returns one page of movies, ?format=ndjson streams the movie ids
 	 */
 	private void getActor(HttpExchange request) throws IOException { // should access modifier be public or private
 
-		URI uri = request.getRequestURI();
-		String query = uri.getQuery();
-		Map<String, String> queryParam = splitQuery(query);
+		Map<String, String> queryParam = queryParams(request);
 		String actorId = queryParam.get("actorId");
 		int statusCode = 400;
 		
-		System.out.println("value of actorId: "+ actorId);
+		byte[] cached;
+		
+		if (Log.DEBUG) {
+			Log.debug("getActor " + actorId);
+		}
 
 		
 		if (actorId == null || actorId.trim().isEmpty()) {
 		    statusCode = 400;
 		}
-		
-		
-		else if (!actorExists(actorId)) {
-			statusCode = 404;
-		}
-
-		else {
-			try (Session session = driver.session()) { // check edge case ??
-				try (Transaction tx = session.beginTransaction()) {
 
-					StatementResult nameResult = tx.run("MATCH (a:actor {id: $id}) RETURN a.name", parameters("id", actorId));
-					
-					String actorName = "";
-					
-					if (nameResult.hasNext()) {
-						actorName = nameResult.next().get(0).asString();
-					} 
-					
-					StatementResult moviesResult = tx.run(
-							"MATCH (a:actor {id: $x})-[:ACTED_IN]->(movie)\n RETURN movie.id",
-							parameters("x", actorId));
-					
-					List<String> moviesArray = new ArrayList<>();
-					while (moviesResult.hasNext()) {
-						String movie = moviesResult.next().get(0).asString();
-		                moviesArray.add(movie);
-					}
-					
-					StatementResult NationalityResult = tx.run("MATCH (a:actor {id: $id}) RETURN a.nationality", parameters("id", actorId));
-					
-					String actorNationality = "";
-					
-					if (NationalityResult.hasNext()) {
-						actorNationality = NationalityResult.next().get(0).asString();
-					} 
+		// movie ids streamed one per line
+		else if (isNdjson(queryParam)) {
+			streamIds(request, EntityQueries.ACTOR_MOVIE_IDS, actorId);
+			return;
+		}
 
-					JSONObject jsonObj = new JSONObject();
-					jsonObj.put("actorId", actorId);
-					jsonObj.put("name", actorName);
-					jsonObj.put("movies", new JSONArray(moviesArray));
-					if (actorNationality != null && !actorNationality.trim().isEmpty()) {
-						jsonObj.put("nationality", actorNationality);
-					}
+		// one page of movies, not cached
+		else if (isPaged(queryParam)) {
+			try (Session session = driver.session(AccessMode.READ)) {
+				JSONObject jsonObj = EntityQueries.actorPage(session, actorId, cursor(queryParam), pageLimit(queryParam));
+				if (jsonObj == null) {
+					statusCode = 404;
+				} else {
 					sendString(request, jsonObj.toString(), 200);
 					return;
-
 				}
+			}
 
-				catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
-					statusCode = 400;
-				}
+			catch (IllegalArgumentException | JSONException e) { // bad limit
+				statusCode = 400;
+			}
 
-				catch (Exception e) { // if server connection / database connection failed, internal server error
-					e.printStackTrace();
-					statusCode = 500;
-				}
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				Log.error("getActor failed", e);
+				statusCode = 500;
+			}
+		}
+		
+		// served from the entity cache without touching the database
+		else if ((cached = entityCache.get("actor:" + actorId)) != null) {
+			sendBytes(request, cached, 200);
+			return;
+		}
+		
+		else {
+			long stamp = entityCache.stamp("actor:" + actorId);
+			try (Session session = driver.session(AccessMode.READ)) {
+				sendEntity(request, "actor:" + actorId, EntityQueries.actor(session, actorId), stamp);
+				return;
+			}
+
+			catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
+				statusCode = 400;
+			}
+
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				Log.error("getActor failed", e);
+				statusCode = 500;
 			}
 		}
 
@@ -548,69 +1050,88 @@ public class Utils {
 	}
 	
 	/*
-	 * Method to get the name and ID of the movie, and the list of actors acting in that movie
+	 * Method to get the name and ID of the movie, and the list of actors acting in that movie.
+	 * ?limit=&cursor= returns one page of actors, ?format=ndjson streams the actor ids
 	 */
 	public void getMovie(HttpExchange request) throws IOException {
-		URI uri = request.getRequestURI();
-		String query = uri.getQuery();
-		Map<String, String> queryParam = splitQuery(query);
+		Map<String, String> queryParam = queryParams(request);
 		String movieId = queryParam.get("movieId");
 		int statusCode = 400;
+		byte[] cached;
 
 		
 		if (movieId == null || movieId.trim().isEmpty()) {
 		    statusCode = 400;
 		}
-		
-		else if (!movieExists(movieId)) {
-			statusCode = 404;
-		}
 
-		else {
-			try (Session session = driver.session()) { // check edge case ??
-				try (Transaction tx = session.beginTransaction()) {
-					StatementResult nameResult = tx.run("MATCH (m: movie {id: $id}) RETURN m.name",
-							parameters("id", movieId));
-					
-					String movieName = "";
-					
-					if (nameResult.hasNext()) {
-						movieName = nameResult.next().get(0).asString();
-					}
-
-					StatementResult actorsResult = tx.run(
-							"MATCH (m:movie {id: $x})<-[:ACTED_IN]-(actor)\n RETURN actor.id",
-							parameters("x", movieId));
-					
-					List<String> actorsArray = new ArrayList<>();
-
-					while (actorsResult.hasNext()) {
-						String actor = actorsResult.next().get(0).asString();
-						actorsArray.add(actor);
-					}
+		// actor ids streamed one per line
+		else if (isNdjson(queryParam)) {
+			streamIds(request, EntityQueries.MOVIE_ACTOR_IDS, movieId);
+			return;
+		}
 
-					JSONObject jsonObj = new JSONObject();
-					jsonObj.put("movieId", movieId);
-					jsonObj.put("name", movieName);
-					jsonObj.put("actors", new JSONArray(actorsArray));
+		// one page of actors, not cached
+		else if (isPaged(queryParam)) {
+			try (Session session = driver.session(AccessMode.READ)) {
+				JSONObject jsonObj = EntityQueries.moviePage(session, movieId, cursor(queryParam), pageLimit(queryParam));
+				if (jsonObj == null) {
+					statusCode = 404;
+				} else {
 					sendString(request, jsonObj.toString(), 200);
 					return;
-
 				}
+			}
 
-				catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
-					statusCode = 400;
-				}
+			catch (IllegalArgumentException | JSONException e) { // bad limit
+				statusCode = 400;
+			}
 
-				catch (Exception e) { // if server connection / database connection failed, internal server error
-					statusCode = 500;
-				}
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				Log.error("getMovie failed", e);
+				statusCode = 500;
+			}
+		}
+		
+		// served from the entity cache without touching the database
+		else if ((cached = entityCache.get("movie:" + movieId)) != null) {
+			sendBytes(request, cached, 200);
+			return;
+		}
+		
+		else {
+			long stamp = entityCache.stamp("movie:" + movieId);
+			try (Session session = driver.session(AccessMode.READ)) {
+				sendEntity(request, "movie:" + movieId, EntityQueries.movie(session, movieId), stamp);
+				return;
+			}
+
+			catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
+				statusCode = 400;
+			}
+
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				Log.error("getMovie failed", e);
+				statusCode = 500;
 			}
 		}
 
 		sendString(request, "", statusCode);
 	}
 
+	/*
+	 * Caches a getActor / getMovie body under key, unless a write since stamp
+	 * made it stale, and sends it; 404 when jsonObj is null
+	 */
+	private void sendEntity(HttpExchange request, String key, JSONObject jsonObj, long stamp) throws IOException {
+		if (jsonObj == null) {
+			sendString(request, "", 404);
+			return;
+		}
+		byte[] body = jsonObj.toString().getBytes(StandardCharsets.UTF_8);
+		entityCache.put(key, body, stamp);
+		sendBytes(request, body, 200);
+	}
+
 	/*
 	 * Method to check if a relationship (ACTED_IN) exists between an actor and a
 	 * movie
@@ -635,7 +1156,7 @@ public class Utils {
 		}
 
 		else {
-			try (Session session = driver.session()) { // check edge case ??
+			try (Session session = driver.session(AccessMode.READ)) { // check edge case ??
 				try (Transaction tx = session.beginTransaction()) {
 					StatementResult node_boolean = tx.run(
 							"RETURN EXISTS ((:actor {id: $actorId})-[:ACTED_IN*1]-(:movie {id: $movieId})) AS bool",
@@ -667,7 +1188,8 @@ public class Utils {
 	
 	
 	/*
-	 * Method to get the nationality of the actor
+	 * Method to get the names of all actors with a nationality, streamed as they are read.
+	 * ?limit=&cursor= returns one page at a time, ?format=ndjson writes one name per line
 	 */
 	public void getNationality(HttpExchange request) throws IOException {
 
@@ -675,124 +1197,285 @@ public class Utils {
 		String query = uri.getQuery();
 		Map<String, String> queryParam = splitQuery(query);
 		String nationality = queryParam.get("nationality");
-		System.out.println(nationality);
+		if (Log.DEBUG) {
+			Log.debug("getNationality " + nationality);
+		}
 		int statusCode = 400;
 		
 		 
 		if (nationality == null || nationality.trim().isEmpty()) {
 		    statusCode = 400;
 		}
-		
-		else if (!nationalityExists(nationality)) {
-			statusCode = 404;
-		}
-		  
 
-		else {
-			try (Session session = driver.session()) { // check edge case ??
-				try (Transaction tx = session.beginTransaction()) {
- 
-					StatementResult actorsResult = tx.run(
-							"MATCH (a:actor {nationality: $x}) RETURN a.name",
-							parameters("x", nationality));
-					
-					List<String> actorsArray = new ArrayList<>();
-
-					while (actorsResult.hasNext()) {
-						String actor = actorsResult.next().get(0).asString();
-						actorsArray.add(actor);
+		// answered from memory when the nationality index is loaded
+		else if (nationalityIndex != null) {
+			getNationalityFromIndex(request, queryParam, nationality);
+			return;
+		}
+		
+		// one page of actors ordered by actor id
+		else if (isPaged(queryParam) && !isNdjson(queryParam)) {
+			try (Session session = driver.session(AccessMode.READ)) {
+				int limit = pageLimit(queryParam);
+				String cursor = cursor(queryParam);
+				StatementResult actorsResult = session.run(
+						"MATCH (a:actor {nationality: $x}) WHERE a.id > $cursor\n"
+						+ "RETURN a.id, a.name ORDER BY a.id LIMIT $limit",
+						parameters("x", nationality, "cursor", cursor, "limit", limit + 1));
+
+				List<String> actorsArray = new ArrayList<>();
+				String lastId = null;
+				String nextCursor = null;
+				while (actorsResult.hasNext()) {
+					Record record = actorsResult.next();
+					if (actorsArray.size() == limit) {
+						nextCursor = lastId;
+						break;
 					}
+					lastId = record.get(0).asString();
+					actorsArray.add(record.get(1).asString());
+				}
 
+				// an empty first page means no actor has this nationality
+				if (actorsArray.isEmpty() && cursor.isEmpty()) {
+					statusCode = 404;
+				} else {
 					JSONObject jsonObj = new JSONObject();
-					 
 					jsonObj.put("actors", new JSONArray(actorsArray));
+					if (nextCursor != null) {
+						jsonObj.put("nextCursor", nextCursor);
+					}
 					sendString(request, jsonObj.toString(), 200);
 					return;
+				}
+			}
+
+			catch (IllegalArgumentException | JSONException e) { // bad limit
+				statusCode = 400;
+			}
+
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				Log.error("getNationality failed", e);
+				statusCode = 500;
+			}
+		}
 
+		// every actor, written to the response as records arrive
+		else {
+			try (Session session = driver.session(AccessMode.READ)) {
+				StatementResult actorsResult = session.run(
+						"MATCH (a:actor {nationality: $x}) RETURN a.name",
+						parameters("x", nationality));
+
+				if (!actorsResult.hasNext()) {
+					statusCode = 404;
+				} else {
+					streamColumn(request, actorsResult.next(), actorsResult, isNdjson(queryParam), "{\"actors\":[",
+							"]}");
+					return;
 				}
+			}
 
-				catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
-					e.printStackTrace();
-					statusCode = 400;
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				Log.error("getNationality failed", e);
+				statusCode = 500;
+			}
+		}
+		sendString(request, "", statusCode);
+	}
+
+	/*
+	 * getNationality served from the in-memory nationality index, with the
+	 * same paging and NDJSON options
+	 */
+	private void getNationalityFromIndex(HttpExchange request, Map<String, String> queryParam, String nationality)
+			throws IOException {
+		NationalityIndex index = nationalityIndex;
+		int statusCode;
+		try {
+			if (isPaged(queryParam) && !isNdjson(queryParam)) {
+				int limit = pageLimit(queryParam);
+				String cursor = cursor(queryParam);
+				NationalityIndex.Members page = index.page(nationality, cursor, limit);
+
+				// an empty first page means no actor has this nationality
+				if (page.size() == 0 && cursor.isEmpty()) {
+					statusCode = 404;
+				} else {
+					JSONArray actors = new JSONArray();
+					for (int i = 0; i < Math.min(page.size(), limit); i++) {
+						actors.put(page.name(i));
+					}
+					JSONObject jsonObj = new JSONObject();
+					jsonObj.put("actors", actors);
+					if (page.size() > limit) {
+						jsonObj.put("nextCursor", page.actorId(limit - 1));
+					}
+					sendString(request, jsonObj.toString(), 200);
+					return;
 				}
+			}
 
-				catch (Exception e) { // if server connection / database connection failed, internal server error
-					e.printStackTrace();
-					statusCode = 500;
+			else {
+				NationalityIndex.Members members = index.members(nationality);
+				if (members.size() == 0) {
+					statusCode = 404;
+				} else {
+					streamStrings(request, new Iterator<String>() {
+						private int next;
+
+						@Override
+						public boolean hasNext() {
+							return next < members.size();
+						}
+
+						@Override
+						public String next() {
+							return members.name(next++);
+						}
+					}, isNdjson(queryParam), "{\"actors\":[", "]}");
+					return;
 				}
 			}
 		}
+
+		catch (IllegalArgumentException | JSONException e) { // bad limit
+			statusCode = 400;
+		}
+
 		sendString(request, "", statusCode);
 	}
+
 	
 	
 	
 
 	/*
-	 * Method to compute the Bacon number of an actor
+	 * Method to compute the Bacon number of an actor. An optional sourceId
+	 * computes the degrees of separation from that actor instead of Bacon.
+	 * Paths longer than ?maxDegrees= (default 6) are not reported; the 404
+	 * body says whether the actors are not connected or just too far apart.
 	 */
 	public void computeBaconNumber(HttpExchange request) throws IOException {
-		URI uri = request.getRequestURI();
-		String query = uri.getQuery();
-		System.out.println(query);
-		Map<String, String> queryParam = splitQuery(query);
-		System.out.println(queryParam);
-		String actorId = queryParam.get("actorId");
-		int baconNumber = 0;
-		String baconID = "nm0000102";
+		Map<String, String> queryParam = queryParams(request);
+		if (Log.DEBUG) {
+			Log.debug("computeBaconNumber " + queryParam);
+		}
+		BaconQuery bacon = new BaconQuery(queryParam, "number");
+		byte[] cached;
 
 		int statusCode = 400;
 		
-		if (actorId == null || actorId.trim().isEmpty()) {
-			System.out.println("error here");
+		if (!bacon.valid()) {
 		    statusCode = 400;
 		}
 
-		else if (!actorExists(actorId)) {
+		// known to have no path within the bound, answered without any lookup
+		else if ((cached = negativeCache.get(bacon.negativeKey)) != null) {
+			sendBytes(request, cached, 404);
+			return;
+		}
+
+		else if (!actorsExist(bacon)) {
 			statusCode = 404;
 		}
 
-		else if (actorId.equals("nm0000102")) {
-			baconNumber = 0;
-			 JSONObject jsonObj = new JSONObject();
-             try {
-				jsonObj.put("baconNumber", baconNumber);
-			} catch (JSONException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		else {
+			try {
+				// the actor is the source
+				if (bacon.trivial()) {
+					sendBaconNumber(request, bacon, 0, 0);
+					return;
+				}
+
+				long stamp = negativeCache.stamp(bacon.negativeKey);
+				sendBaconNumber(request, bacon, baconEngine.baconNumber(bacon.actorId, bacon.baconID, bacon.maxDegrees),
+						stamp);
+				return;
+			}
+
+			catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
+				statusCode = 400;
+			}
+
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				if (Neo4jBaconEngine.isTimeout(e)) {
+					sendString(request, "Query timed out\n", 503);
+					return;
+				}
+				Log.error("computeBaconNumber failed", e);
+				statusCode = 500;
 			}
-             sendString(request, jsonObj.toString(), 200);
-             return;
+		}
+
+		sendString(request, "", statusCode);
+
+	}
+
+	/*
+	 * Method to compute the Bacon path of an actor, or the path to sourceId if
+	 * one is given, bounded by ?maxDegrees= like computeBaconNumber
+	 */
+	public void computeBaconPath(HttpExchange request) throws IOException {
+
+		Map<String, String> queryParam = queryParams(request);
+		if (Log.DEBUG) {
+			Log.debug("computeBaconPath " + queryParam);
+		}
+		BaconQuery bacon = new BaconQuery(queryParam, "path");
+		byte[] cached;
+		int statusCode = 400; 
+
+		if (!bacon.valid()) {
+		    statusCode = 400;
+		}
+
+		// known to have no path within the bound, answered without any lookup
+		else if ((cached = negativeCache.get(bacon.negativeKey)) != null) {
+			sendBytes(request, cached, 404);
+			return;
+		}
+
+		else if (!actorsExist(bacon)) {
+			statusCode = 404;
 		}
 
 		else {
-			try (Session session = driver.session()) { // check edge case ??
-                try (Transaction tx = session.beginTransaction()) {
-                    StatementResult baconCount = tx.run(
-                            "MATCH path = shortestPath((a:actor {id: $actor1})-[:ACTED_IN*]-(b:actor {id: $actor2})) RETURN length(path)/2 as baconPathNumber",
-                            parameters("actor1", actorId, "actor2", baconID));
- 
-                    
-                    if (baconCount.hasNext()) {
-                        baconNumber = baconCount.next().get("baconPathNumber").asInt();
-                    }  
-  
-                    JSONObject jsonObj = new JSONObject();
-                    jsonObj.put("baconNumber", baconNumber);
-                    sendString(request, jsonObj.toString(), 200);
-                    return;
-
-                }
-
-                catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
-                    statusCode = 400;
-                }
-
-                catch (Exception e) { // if server connection / database connection failed, internal server error
-                	e.printStackTrace();
-                    statusCode = 500;
-                }
-            }
+			try {
+				// the actor is the source
+				if (bacon.trivial()) {
+					sendBaconPath(request, Collections.singletonList(bacon.baconID));
+					return;
+				}
+
+				long stamp = negativeCache.stamp(bacon.negativeKey);
+				BaconEngine engine = baconEngine;
+				List<String> path = engine.baconPath(bacon.actorId, bacon.baconID, bacon.maxDegrees);
+
+				// not connected, or not within maxDegrees
+				if (path == null) {
+					boolean notConnected = engine.notConnected(bacon.actorId, bacon.baconID);
+					sendNoPath(request, bacon, notConnected ? BaconEngine.NOT_CONNECTED : BaconEngine.BEYOND_BOUND,
+							stamp);
+					return;
+				}
+
+				sendBaconPath(request, path);
+				return;
+			}
+
+			catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
+				statusCode = 400;
+			}
+
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				if (Neo4jBaconEngine.isTimeout(e)) {
+					sendString(request, "Query timed out\n", 503);
+					return;
+				}
+				Log.error("computeBaconPath failed", e);
+				statusCode = 500;
+			}
 		}
 
 		sendString(request, "", statusCode);
@@ -800,114 +1483,799 @@ public class Utils {
 	}
 
 	/*
-	 * Method to compute the Bacon path of an actor
+	 * The parameters of computeBaconNumber and computeBaconPath, read the same
+	 * way by the blocking and async handlers
 	 */
-	public void computeBaconPath(HttpExchange request) throws IOException {
+	private final class BaconQuery {
+		final String actorId;
+		final String baconID;
+		final int maxDegrees;
+		// negativeCache key; kind keeps number and path bodies apart
+		final String negativeKey;
+
+		BaconQuery(Map<String, String> queryParam, String kind) {
+			String sourceId = queryParam.get("sourceId");
+			actorId = queryParam.get("actorId");
+			baconID = (sourceId == null || sourceId.trim().isEmpty()) ? baconId : sourceId;
+			maxDegrees = maxDegrees(queryParam);
+			negativeKey = kind + ":" + actorId + "|" + baconID + "|" + maxDegrees;
+		}
+
+		boolean valid() {
+			return actorId != null && !actorId.trim().isEmpty() && maxDegrees >= 0;
+		}
+
+		// the actor is the source, answered without a search
+		boolean trivial() {
+			return actorId.equals(baconID);
+		}
+	}
+
+	/*
+	 * True if both actors of bacon exist. Actors are never deleted, so once
+	 * the default Bacon actor has been found it is not looked up again.
+	 */
+	private boolean actorsExist(BaconQuery bacon) {
+		if (!knownActor(bacon.actorId)) {
+			return false;
+		}
+		if (!bacon.baconID.equals(baconId)) {
+			return knownActor(bacon.baconID);
+		}
+		if (!baconIdExists) {
+			baconIdExists = knownActor(baconId);
+		}
+		return baconIdExists;
+	}
+
+	/*
+	 * True if id is an actor: looked up in the in-memory graph when that
+	 * engine is active, so Bacon queries need no Neo4j round trip, and in
+	 * Neo4j otherwise
+	 */
+	private boolean knownActor(String id) {
+		BaconEngine engine = baconEngine;
+		if (engine instanceof InMemoryBaconEngine) {
+			return ((InMemoryBaconEngine) engine).hasActor(id);
+		}
+		return actorExists(id);
+	}
+
+	/*
+	 * Answers computeBaconNumber from an engine result: 404 for a missing
+	 * actor, the no-path body (cached as of stamp) for a negative result
+	 */
+	private void sendBaconNumber(HttpExchange request, BaconQuery bacon, int baconNumber, long stamp)
+			throws IOException, JSONException {
+		if (baconNumber == BaconEngine.NOT_FOUND) {
+			sendString(request, "", 404);
+		} else if (baconNumber < 0) {
+			sendNoPath(request, bacon, baconNumber, stamp);
+		} else {
+			JSONObject jsonObj = new JSONObject();
+			jsonObj.put("baconNumber", baconNumber);
+			sendString(request, jsonObj.toString(), 200);
+		}
+	}
+
+	private static void sendBaconPath(HttpExchange request, List<String> path) throws IOException, JSONException {
+		JSONObject jsonObj = new JSONObject();
+		jsonObj.put("baconPath", new JSONArray(path));
+		sendString(request, jsonObj.toString(), 200);
+	}
 
+	/*
+	 * Sends the 404 body for reason (NOT_CONNECTED or BEYOND_BOUND) and
+	 * remembers it in the negative cache unless a write since stamp made it
+	 * stale
+	 */
+	private void sendNoPath(HttpExchange request, BaconQuery bacon, int reason, long stamp) throws IOException {
+		byte[] body = noPath(reason, bacon.maxDegrees);
+		negativeCache.put(bacon.negativeKey, body, stamp);
+		sendBytes(request, body, 404);
+	}
+
+	/*
+	 * Reads ?maxDegrees=, defaulting to bacon.maxDegrees (6). Returns -1 for
+	 * a value that is not a non-negative number.
+	 */
+	private static int maxDegrees(Map<String, String> queryParam) {
+		String value = queryParam.get("maxDegrees");
+		if (value == null) {
+			return Settings.getInt("bacon.maxDegrees", 6);
+		}
+		try {
+			// larger bounds are as good as unbounded
+			return Math.min(Integer.parseInt(value.trim()), 1000000);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/*
+	 * The 404 body for a missing Bacon number or path, telling apart actors
+	 * that are not connected at all from those further than maxDegrees apart
+	 */
+	private static byte[] noPath(int baconNumber, int maxDegrees) {
+		String body = baconNumber == BaconEngine.NOT_CONNECTED ? "{\"error\":\"notConnected\"}"
+				: "{\"error\":\"noPathWithinBound\",\"maxDegrees\":" + maxDegrees + "}";
+		return body.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Method to compute the degrees of separation and the shortest path
+	 * between two arbitrary actors
+	 */
+	public void computeDegrees(HttpExchange request) throws IOException {
 		URI uri = request.getRequestURI();
 		String query = uri.getQuery();
-		System.out.println(query);
 		Map<String, String> queryParam = splitQuery(query);
-		System.out.println(queryParam);
-		String actorId = queryParam.get("actorId");
- 		String baconID = "nm0000102";
-		int statusCode = 400; 
-
-		List<String> baconIDArray = new ArrayList<String>(); 
+		String fromId = queryParam.get("from");
+		String toId = queryParam.get("to");
+		int statusCode = 400;
 
-		if (actorId == null || actorId.trim().isEmpty()) {
-		    statusCode = 400;
+		if (fromId == null || fromId.trim().isEmpty() || toId == null || toId.trim().isEmpty()) {
+			statusCode = 400;
 		}
 
-		else if (!actorExists(actorId)) {
+		else if (!knownActor(fromId) || !knownActor(toId)) {
 			statusCode = 404;
 		}
 
-		else if (actorId.equals("nm0000102")) {
-			baconIDArray.add(baconID);
-			JSONObject jsonObj = new JSONObject();
+		else {
+			try {
+				List<String> path = fromId.equals(toId) ? Collections.singletonList(fromId)
+						: baconEngine.shortestPath(fromId, toId);
 
+				// no path found
+				if (path == null) {
+					sendString(request, "", 404);
+					return;
+				}
+
+				JSONObject jsonObj = new JSONObject();
+				jsonObj.put("degrees", (path.size() - 1) / 2);
+				jsonObj.put("path", new JSONArray(path));
+				sendString(request, jsonObj.toString(), 200);
+				return;
+			}
+
+			catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
+				statusCode = 400;
+			}
+
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				Log.error("computeDegrees failed", e);
+				statusCode = 500;
+			}
+		}
+
+		sendString(request, "", statusCode);
+	}
+
+	/*
+	 * Method to list the actors of a nationality whose Bacon number is at most
+	 * maxBaconNumber, e.g. ?nationality=Canadian&maxBaconNumber=2. Each entry
+	 * has the actorId, name and baconNumber.
+	 */
+	public void computeNationalityWithinBacon(HttpExchange request) throws IOException {
+		URI uri = request.getRequestURI();
+		String query = uri.getQuery();
+		Map<String, String> queryParam = splitQuery(query);
+		String nationality = queryParam.get("nationality");
+		String maxParam = queryParam.get("maxBaconNumber");
+		int statusCode = 400;
+
+		if (nationality == null || nationality.trim().isEmpty() || maxParam == null) {
+			statusCode = 400;
+		}
+
+		else {
 			try {
-				jsonObj.put("baconPath", new JSONArray(baconIDArray));
-			} catch (JSONException e) {
- 				e.printStackTrace();
+				int maxBaconNumber = Integer.parseInt(maxParam.trim());
+				NationalityIndex index = nationalityIndex;
+				NationalityIndex.Members members = index != null ? index.members(nationality)
+						: loadNationality(nationality);
+
+				if (members.size() == 0) {
+					sendString(request, "", 404);
+					return;
+				}
+
+				// intersect the nationality set with the actors within range of the root
+				List<String> actorIds = new ArrayList<>(members.size());
+				for (int i = 0; i < members.size(); i++) {
+					actorIds.add(members.actorId(i));
+				}
+				int[] baconNumbers = baconEngine.baconNumbers(actorIds, baconId, Math.max(maxBaconNumber, 0));
+				JSONArray actors = new JSONArray();
+				for (int i = 0; i < members.size(); i++) {
+					int baconNumber = baconNumbers[i];
+					if (baconNumber >= 0 && baconNumber <= maxBaconNumber) {
+						JSONObject actor = new JSONObject();
+						actor.put("actorId", members.actorId(i));
+						actor.put("name", members.name(i));
+						actor.put("baconNumber", baconNumber);
+						actors.put(actor);
+					}
+				}
+
+				JSONObject jsonObj = new JSONObject();
+				jsonObj.put("actors", actors);
+				sendString(request, jsonObj.toString(), 200);
+				return;
 			}
+
+			catch (NumberFormatException | JSONException e) { // bad maxBaconNumber
+				statusCode = 400;
+			}
+
+			catch (Exception e) { // if server connection / database connection failed, internal server error
+				Log.error("computeNationalityWithinBacon failed", e);
+				statusCode = 500;
+			}
+		}
+
+		sendString(request, "", statusCode);
+	}
+
+	/*
+	 * Reads the actors of one nationality from Neo4j, for when the nationality
+	 * index is not loaded
+	 */
+	private NationalityIndex.Members loadNationality(String nationality) {
+		NationalityIndex index = new NationalityIndex();
+		try (Session session = driver.session(AccessMode.READ)) {
+			StatementResult result = session.run("MATCH (a:actor {nationality: $x}) RETURN a.id, a.name",
+					parameters("x", nationality));
+			while (result.hasNext()) {
+				Record record = result.next();
+				index.put(record.get(0).asString(), record.get(1).asString(), nationality);
+			}
+		}
+		return index.members(nationality);
+	}
+
+
+	/*
+	 * Method to report the state and population progress of every index
+	 */
+	public void getSchema(HttpExchange request) throws IOException {
+		try {
+			JSONObject jsonObj = new JSONObject();
+			jsonObj.put("indexes", SchemaBootstrap.indexStatus(driver));
 			sendString(request, jsonObj.toString(), 200);
+		}
+
+		catch (Exception e) { // if server connection / database connection failed, internal server error
+			Log.error("getSchema failed", e);
+			sendString(request, "", 500);
+		}
+	}
+
+	/*
+	 * Method to report the entity cache's hit/miss/eviction counters, and those of the
+	 * negative Bacon result cache under "negative"
+	 */
+	public void getCacheStats(HttpExchange request) throws IOException {
+		try {
+			JSONObject stats = entityCache.stats();
+			stats.put("negative", negativeCache.stats());
+			sendString(request, stats.toString(), 200);
+		}
+
+		catch (JSONException e) {
+			sendString(request, "", 500);
+		}
+	}
+
+	/*
+	 * getActor on the async pipeline. Only a plain lookup is covered: a cache
+	 * hit is answered at once and a miss is read with runAsync. Returns null
+	 * for paged, NDJSON and invalid requests.
+	 */
+	private CompletionStage<Void> getActorAsync(HttpExchange request, AsyncQueries queries) throws IOException {
+		Map<String, String> queryParam = queryParams(request);
+		String actorId = queryParam.get("actorId");
+		if (actorId == null || actorId.trim().isEmpty() || isNdjson(queryParam) || isPaged(queryParam)) {
+			return null;
+		}
+
+		String key = "actor:" + actorId;
+		byte[] cached = entityCache.get(key);
+		if (cached != null) {
+			sendBytes(request, cached, 200);
+			return DONE;
+		}
+		long stamp = entityCache.stamp(key);
+		return respond(queries.read(EntityQueries.ACTOR, parameters("id", actorId)), records -> sendEntity(request,
+				key, records.isEmpty() ? null : EntityQueries.actorJson(actorId, records.get(0)), stamp));
+	}
+
+	/*
+	 * getMovie on the async pipeline, covering the same cases as
+	 * getActorAsync
+	 */
+	private CompletionStage<Void> getMovieAsync(HttpExchange request, AsyncQueries queries) throws IOException {
+		Map<String, String> queryParam = queryParams(request);
+		String movieId = queryParam.get("movieId");
+		if (movieId == null || movieId.trim().isEmpty() || isNdjson(queryParam) || isPaged(queryParam)) {
+			return null;
+		}
+
+		String key = "movie:" + movieId;
+		byte[] cached = entityCache.get(key);
+		if (cached != null) {
+			sendBytes(request, cached, 200);
+			return DONE;
+		}
+		long stamp = entityCache.stamp(key);
+		return respond(queries.read(EntityQueries.MOVIE, parameters("id", movieId)), records -> sendEntity(request,
+				key, records.isEmpty() ? null : EntityQueries.movieJson(movieId, records.get(0)), stamp));
+	}
+
+	/*
+	 * computeBaconNumber on the async pipeline. Only the Neo4j engine waits
+	 * on the database, so with the in-memory engine, and for invalid or
+	 * trivial requests, this returns null.
+	 */
+	private CompletionStage<Void> computeBaconNumberAsync(HttpExchange request, AsyncQueries queries)
+			throws IOException {
+		BaconEngine engine = baconEngine;
+		BaconQuery bacon = new BaconQuery(queryParams(request), "number");
+		if (!(engine instanceof Neo4jBaconEngine) || !bacon.valid() || bacon.trivial()) {
+			return null;
+		}
+
+		byte[] cached = negativeCache.get(bacon.negativeKey);
+		if (cached != null) {
+			sendBytes(request, cached, 404);
+			return DONE;
+		}
+		long stamp = negativeCache.stamp(bacon.negativeKey);
+		return respond(
+				((Neo4jBaconEngine) engine).baconNumberAsync(queries, bacon.actorId, bacon.baconID, bacon.maxDegrees),
+				baconNumber -> sendBaconNumber(request, bacon, baconNumber, stamp));
+	}
+
+	/*
+	 * computeBaconPath on the async pipeline, covering the same cases as
+	 * computeBaconNumberAsync
+	 */
+	private CompletionStage<Void> computeBaconPathAsync(HttpExchange request, AsyncQueries queries)
+			throws IOException {
+		BaconEngine engine = baconEngine;
+		BaconQuery bacon = new BaconQuery(queryParams(request), "path");
+		if (!(engine instanceof Neo4jBaconEngine) || !bacon.valid() || bacon.trivial()) {
+			return null;
+		}
+
+		byte[] cached = negativeCache.get(bacon.negativeKey);
+		if (cached != null) {
+			sendBytes(request, cached, 404);
+			return DONE;
+		}
+		long stamp = negativeCache.stamp(bacon.negativeKey);
+		Neo4jBaconEngine neo4j = (Neo4jBaconEngine) engine;
+		CompletableFuture<List<String>> path = neo4j
+				.baconPathAsync(queries, bacon.actorId, bacon.baconID, bacon.maxDegrees).toCompletableFuture();
+		// a miss takes a second, lookup-only statement to tell a missing actor
+		// from one without movies or no path within the bound
+		CompletionStage<Integer> reason = path.thenCompose(p -> p != null ? CompletableFuture.completedFuture(0)
+				: neo4j.noPathAsync(queries, bacon.actorId, bacon.baconID));
+		return respond(reason, noPath -> {
+			List<String> p = path.join();
+			if (p != null) {
+				sendBaconPath(request, p);
+			} else if (noPath == BaconEngine.NOT_FOUND) {
+				sendString(request, "", 404);
+			} else {
+				sendNoPath(request, bacon, noPath, stamp);
+			}
+		});
+	}
+
+	/*
+	 * Method to write a new snapshot of the in-memory graph to bacon.snapshot
+	 * and start its graph log over, so the next start replays less
+	 */
+	public void writeSnapshot(HttpExchange request) throws IOException {
+		BaconEngine engine = baconEngine;
+		String snapshot = Settings.get("bacon.snapshot", "");
+		if (!(engine instanceof InMemoryBaconEngine) || snapshot.isEmpty()) {
+			sendString(request, "Snapshots need the in-memory engine and bacon.snapshot\n", 503);
+			return;
+		}
+		try {
+			long start = System.currentTimeMillis();
+			java.nio.file.Path file = Paths.get(snapshot);
+			((InMemoryBaconEngine) engine).writeSnapshot(file);
+			JSONObject jsonObj = new JSONObject();
+			jsonObj.put("file", file.toAbsolutePath().toString());
+			jsonObj.put("bytes", Files.size(file));
+			jsonObj.put("millis", System.currentTimeMillis() - start);
+			sendString(request, jsonObj.toString(), 200);
+		}
+
+		catch (Exception e) { // disk full, or the snapshot directory is not writable
+			Log.error("writeSnapshot failed", e);
+			sendString(request, "", 500);
+		}
+	}
+
+	/*
+	 * Method to report the connected components of the in-memory graph: their
+	 * count, a size histogram and the fraction of nodes in the giant component.
+	 * Only the in-memory engine tracks components, so with the Neo4j engine
+	 * this is 503.
+	 */
+	public void getComponentStats(HttpExchange request) throws IOException {
+		BaconEngine engine = baconEngine;
+		if (!(engine instanceof InMemoryBaconEngine)) {
+			sendString(request, "Components need the in-memory engine (bacon.engine=memory)\n", 503);
 			return;
+		}
+		try {
+			sendString(request, ((InMemoryBaconEngine) engine).graph().componentStats().toString(), 200);
+		}
 
+		catch (JSONException e) {
+			sendString(request, "", 500);
 		}
+	}
 
-		else {
-			try (Session session = driver.session()) { // check edge case ??
-				try (Transaction tx = session.beginTransaction()) {
-					try {
-						StatementResult result = tx.run(
-								"MATCH path = shortestPath((a:actor {id: $actor1})-[:ACTED_IN*]-(b:actor {id: $actor2})) RETURN nodes(path) AS nodes",
-								parameters("actor1", actorId, "actor2", baconID));
-						 
-						List<Node> nodes = new ArrayList<>();
-						
-						if (result.hasNext()) {
-		                    Record record = result.next();
-		                    nodes = record.get("nodes").asList(node -> node.asNode());
-		                }  
-						
-						if (nodes.size() == 0) {
-							statusCode = 404;
- 							sendString(request, "", 404);
-							return;
-						}
-						
-						else {
-							for (int i = 0; i < nodes.size(); i++) { 
-			                     Node node = nodes.get(i);  
-	 		                         baconIDArray.add(node.get("id").asString());
-			                }
-
-							 
-							JSONObject jsonObj = new JSONObject();
-							jsonObj.put("baconPath", new JSONArray(baconIDArray));
-							sendString(request, jsonObj.toString(), 200);
-							return;
-							
-						}
-					}
+	/*
+	 * Method to report request and Neo4j metrics in the Prometheus text format
+	 */
+	public void getMetrics(HttpExchange request) throws IOException {
+		request.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+		sendString(request, metrics.toPrometheus(), 200);
+	}
 
-					catch (NullPointerException e) {
-						statusCode = 404;
-					}
+	/*
+	 * Method to compute the Bacon numbers of a JSON array of actor ids in one
+	 * request. Results are streamed back in request order as
+	 * {"actorId":...,"status":...,"baconNumber":...}, as a JSON array or, with
+	 * ?format=ndjson, one per line. ?sourceId= and ?maxDegrees= work as for
+	 * computeBaconNumber, and an actor without a path gets status 404 with the
+	 * same error fields as its 404 body.
+	 */
+	public void batchComputeBaconNumber(HttpExchange request) throws IOException {
+		String query = request.getRequestURI().getQuery();
+		Map<String, String> queryParam = query == null ? Collections.emptyMap() : splitQuery(query);
+		String sourceId = queryParam.get("sourceId");
+		String baconID = (sourceId == null || sourceId.trim().isEmpty()) ? baconId : sourceId;
+		int maxDegrees = maxDegrees(queryParam);
+		if (maxDegrees < 0) {
+			sendString(request, "", 400);
+			return;
+		}
+
+		List<String> ids;
+		try {
+			ids = readBatchIds(request);
+		}
+
+		// not a JSON array, or too many ids
+		catch (IllegalArgumentException | JSONException e) {
+			sendString(request, e.getMessage() == null ? "" : e.getMessage() + "\n", 400);
+			return;
+		}
+
+		if (!baconID.equals(baconId) && !knownActor(baconID)) {
+			sendString(request, "", 404);
+			return;
+		}
 
+		BaconEngine engine = baconEngine;
+		streamBatch(request, ids, isNdjson(queryParam), chunk -> {
+			int[] numbers = engine.baconNumbers(chunk, baconID, maxDegrees);
+			String[] items = new String[chunk.size()];
+			for (int i = 0; i < items.length; i++) {
+				String actorId = chunk.get(i);
+				if (actorId.isEmpty()) {
+					items[i] = batchItem(actorId, 400, null, null);
+				} else if (numbers[i] == BaconEngine.NOT_FOUND) {
+					items[i] = batchItem(actorId, 404, null, null);
+				} else if (numbers[i] < 0) {
+					items[i] = noPathItem(actorId, numbers[i], maxDegrees);
+				} else {
+					items[i] = batchItem(actorId, 200, "baconNumber", String.valueOf(numbers[i]));
 				}
+			}
+			return items;
+		});
+	}
 
-				// no path found
+	/*
+	 * Method to fetch a JSON array of actors in one request. Results are
+	 * streamed back in request order as {"actorId":...,"status":...,"actor":
+	 * {getActor response}}, as a JSON array or, with ?format=ndjson, one per
+	 * line. Cached actors are served from the entity cache and the rest are
+	 * read with one statement per chunk of ids.
+	 */
+	public void batchGetActor(HttpExchange request) throws IOException {
+		String query = request.getRequestURI().getQuery();
+		Map<String, String> queryParam = query == null ? Collections.emptyMap() : splitQuery(query);
 
-				catch (JSONException e) { // if deserialized failed, (ex: JSONObject Null Value)
-					statusCode = 400;
+		List<String> ids;
+		try {
+			ids = readBatchIds(request);
+		}
+
+		// not a JSON array, or too many ids
+		catch (IllegalArgumentException | JSONException e) {
+			sendString(request, e.getMessage() == null ? "" : e.getMessage() + "\n", 400);
+			return;
+		}
+
+		streamBatch(request, ids, isNdjson(queryParam), chunk -> {
+			String[] items = new String[chunk.size()];
+			List<String> misses = new ArrayList<>();
+			List<Integer> missAt = new ArrayList<>();
+			for (int i = 0; i < items.length; i++) {
+				String actorId = chunk.get(i);
+				byte[] cached;
+				if (actorId.isEmpty()) {
+					items[i] = batchItem(actorId, 400, null, null);
+				} else if ((cached = entityCache.get("actor:" + actorId)) != null) {
+					items[i] = batchItem(actorId, 200, "actor", new String(cached, StandardCharsets.UTF_8));
+				} else {
+					misses.add(actorId);
+					missAt.add(i);
 				}
+			}
+			if (misses.isEmpty()) {
+				return items;
+			}
 
-				catch (Exception e) { // if server connection / database connection failed, internal server error
-					e.printStackTrace();
-					statusCode = 500;
+			long[] stamps = new long[misses.size()];
+			for (int j = 0; j < stamps.length; j++) {
+				stamps[j] = entityCache.stamp("actor:" + misses.get(j));
+			}
+			JSONObject[] actors;
+			try (Session session = driver.session(AccessMode.READ)) {
+				actors = EntityQueries.actors(session, misses);
+			}
+			for (int j = 0; j < actors.length; j++) {
+				String actorId = misses.get(j);
+				if (actors[j] == null) {
+					items[missAt.get(j)] = batchItem(actorId, 404, null, null);
+				} else {
+					String json = actors[j].toString();
+					entityCache.put("actor:" + actorId, json.getBytes(StandardCharsets.UTF_8), stamps[j]);
+					items[missAt.get(j)] = batchItem(actorId, 200, "actor", json);
 				}
 			}
+			return items;
+		});
+	}
+
+	/*
+	 * Resolves one chunk of batch ids to their serialized result items
+	 */
+	private interface BatchChunk {
+		String[] resolve(List<String> ids) throws Exception;
+	}
+
+	/*
+	 * Reads the request body as a JSON array of ids. Entries that are not
+	 * non-empty strings become "" and are answered with a 400 item.
+	 */
+	private static List<String> readBatchIds(HttpExchange request) throws IOException, JSONException {
+		JSONArray array = new JSONArray(new String(request.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+		int maxIds = Settings.getInt("batch.maxIds", 10000);
+		if (array.length() > maxIds) {
+			throw new IllegalArgumentException("At most " + maxIds + " ids per batch");
+		}
+		List<String> ids = new ArrayList<>(array.length());
+		for (int i = 0; i < array.length(); i++) {
+			Object value = array.opt(i);
+			ids.add(value instanceof String ? ((String) value).trim() : "");
+		}
+		return ids;
+	}
+
+	/*
+	 * Writes batch results in request order, resolving BATCH_CHUNK ids at a
+	 * time so memory stays bounded. A chunk that fails is reported as 500
+	 * items rather than failing the whole response.
+	 */
+	private static void streamBatch(HttpExchange request, List<String> ids, boolean ndjson, BatchChunk resolver)
+			throws IOException {
+		if (ndjson) {
+			request.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+		}
+		try (Writer out = ResponseWriter.stream(request, 200)) {
+			if (!ndjson) {
+				out.write('[');
+			}
+			for (int from = 0; from < ids.size(); from += BATCH_CHUNK) {
+				List<String> chunk = ids.subList(from, Math.min(ids.size(), from + BATCH_CHUNK));
+				String[] items;
+				try {
+					items = resolver.resolve(chunk);
+				} catch (Exception e) {
+					Log.error("Batch chunk failed", e);
+					items = null;
+				}
+				for (int i = 0; i < chunk.size(); i++) {
+					if (from + i > 0 && !ndjson) {
+						out.write(',');
+					}
+					out.write(items != null ? items[i] : batchItem(chunk.get(i), 500, null, null));
+					if (ndjson) {
+						out.write('\n');
+					}
+				}
+			}
+			if (!ndjson) {
+				out.write(']');
+			}
+		}
+	}
+
+	/*
+	 * A 404 item carrying the same error fields as the single-id no-path
+	 * body
+	 */
+	private static String noPathItem(String actorId, int reason, int maxDegrees) {
+		String item = batchItem(actorId, 404, null, null);
+		String body = new String(noPath(reason, maxDegrees), StandardCharsets.UTF_8);
+		return item.substring(0, item.length() - 1) + "," + body.substring(1);
+	}
+
+	/*
+	 * Builds {"actorId":...,"status":...} with an optional extra field whose
+	 * value is already serialized JSON
+	 */
+	private static String batchItem(String actorId, int status, String key, String json) {
+		StringBuilder item = new StringBuilder(64 + (json == null ? 0 : json.length()));
+		item.append("{\"actorId\":").append(actorId.isEmpty() ? "null" : JSONObject.quote(actorId))
+				.append(",\"status\":").append(status);
+		if (key != null) {
+			item.append(",\"").append(key).append("\":").append(json);
+		}
+		return item.append('}').toString();
+	}
+
+	/*
+	 * Streams the ids returned by EntityQueries.ACTOR_MOVIE_IDS or
+	 * MOVIE_ACTOR_IDS as NDJSON, answering 404 if the entity does not exist
+	 */
+	private void streamIds(HttpExchange request, String statement, String id) throws IOException {
+		int statusCode;
+		try (Session session = driver.session(AccessMode.READ)) {
+			StatementResult result = session.run(statement, parameters("id", id));
+			if (!result.hasNext()) {
+				statusCode = 404;
+			} else {
+				// a single null row means the entity has no neighbours
+				Record first = result.next();
+				streamColumn(request, first.get(0).isNull() ? null : first, result, true, "", "");
+				return;
+			}
+		}
+
+		catch (Exception e) { // if server connection / database connection failed, internal server error
+			Log.error("streamIds failed", e);
+			statusCode = 500;
 		}
 
 		sendString(request, "", statusCode);
+	}
+
+	/*
+	 * Writes the first column of first and of every remaining record as JSON
+	 * strings, pulling records from the result as the response is written
+	 * so memory use does not grow with the result
+	 */
+	private static void streamColumn(HttpExchange request, Record first, StatementResult rest, boolean ndjson,
+			String prefix, String suffix) throws IOException {
+		streamStrings(request, new Iterator<String>() {
+			private Record next = first;
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public String next() {
+				String value = next.get(0).asString();
+				next = rest.hasNext() ? rest.next() : null;
+				return value;
+			}
+		}, ndjson, prefix, suffix);
+	}
+
+	/*
+	 * Writes values as JSON strings, either one per line (NDJSON) or as array
+	 * elements between prefix and suffix, in a chunked response. An error
+	 * from the source part way through can only cut the response short.
+	 */
+	private static void streamStrings(HttpExchange request, Iterator<String> values, boolean ndjson, String prefix,
+			String suffix) throws IOException {
+		if (ndjson) {
+			request.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+		}
+		try (Writer out = ResponseWriter.stream(request, 200)) {
+			if (!ndjson) {
+				out.write(prefix);
+			}
+			try {
+				boolean separator = false;
+				while (values.hasNext()) {
+					if (separator && !ndjson) {
+						out.write(',');
+					}
+					out.write(JSONObject.quote(values.next()));
+					if (ndjson) {
+						out.write('\n');
+					}
+					separator = true;
+				}
+			} catch (RuntimeException e) {
+				Log.error("Result stream failed", e);
+				return;
+			}
+			if (!ndjson) {
+				out.write(suffix);
+			}
+		}
+	}
+
+	private static boolean isNdjson(Map<String, String> queryParam) {
+		return "ndjson".equalsIgnoreCase(queryParam.get("format"));
+	}
+
+	private static boolean isPaged(Map<String, String> queryParam) {
+		return queryParam.containsKey("limit") || queryParam.containsKey("cursor");
+	}
+
+	private static String cursor(Map<String, String> queryParam) {
+		String cursor = queryParam.get("cursor");
+		return cursor == null ? "" : cursor;
+	}
 
+	/*
+	 * Page size from ?limit=, paging.defaultLimit (100) when only a cursor is
+	 * given, capped at paging.maxLimit (1000)
+	 */
+	private static int pageLimit(Map<String, String> queryParam) {
+		String limit = queryParam.get("limit");
+		int value = limit == null ? Settings.getInt("paging.defaultLimit", 100) : Integer.parseInt(limit.trim());
+		if (value <= 0) {
+			throw new IllegalArgumentException("limit must be positive");
+		}
+		return Math.min(value, Settings.getInt("paging.maxLimit", 1000));
 	}
 
 	/*
-	 * Method to send a response string back to the client
+	 * Method to send a response string back to the client, encoded as UTF-8
 	 */
-	private void sendString(HttpExchange request, String data, int restCode) throws IOException {
-		request.sendResponseHeaders(restCode, data.length());
-		OutputStream os = request.getResponseBody();
-		os.write(data.getBytes());
-		os.close();
+	public static void sendString(HttpExchange request, String data, int restCode) throws IOException {
+		ResponseWriter.send(request, data, restCode);
+	}
+
+
+	/*
+	 * Method to send already encoded response bytes back to the client
+	 */
+	private static void sendBytes(HttpExchange request, byte[] data, int restCode) throws IOException {
+		ResponseWriter.send(request, data, restCode);
 	}
 
 	
 	// use for extracting query params
+	/*
+	 * The request's query parameters, empty when there is no query string
+	 */
+	private static Map<String, String> queryParams(HttpExchange request) throws UnsupportedEncodingException {
+		String query = request.getRequestURI().getQuery();
+		return query == null ? Collections.emptyMap() : splitQuery(query);
+	}
+
 	public static Map<String, String> splitQuery(String query) throws UnsupportedEncodingException {
 		Map<String, String> query_pairs = new LinkedHashMap<String, String>();
 		String[] pairs = query.split("&");
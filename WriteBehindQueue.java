@@ -0,0 +1,201 @@
+package ca.yorku.eecs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.Value;
+
+/*
+ * Group commit for the add* endpoints (write.behind=true).
+ *
+ * Request threads append their validated write statement to a bounded queue
+ * and wait. A single writer thread takes up to write.batchSize (500)
+ * statements, waiting at most write.lingerMs (5) for the batch to fill, runs
+ * them in queue order in one write transaction, and commits once for the
+ * whole batch. Each statement's onCommit hook then runs on the writer, again
+ * in queue order, and only after that is its request acknowledged with its
+ * own single-row result. An acknowledged write is therefore committed.
+ *
+ * With one writer and a FIFO queue, writes are applied in the order they
+ * were accepted, so writes to the same actorId or movieId (addActor, then
+ * addRelationship) keep their order both in Neo4j and in the hooks that
+ * update the in-memory graph and caches.
+ *
+ * If a batch fails, its statements are retried one transaction each, so a
+ * bad statement fails only its own request. A full queue (write.queueCapacity,
+ * default 10000) is rejected at once with Busy(429); a write not acknowledged
+ * within write.ackTimeoutMs (30000) gets Busy(503), although it may still
+ * commit later.
+ */
+public class WriteBehindQueue {
+
+	/*
+	 * Called on the writer thread with a statement's result once it has
+	 * committed
+	 */
+	public interface OnCommit {
+		void apply(Record record);
+	}
+
+	/*
+	 * A write that was not accepted or not acknowledged in time; status is
+	 * the HTTP status to answer with
+	 */
+	public static final class Busy extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+
+		Busy(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+
+		public int status() {
+			return status;
+		}
+	}
+
+	private static final class Write {
+		final String statement;
+		final Value params;
+		final OnCommit onCommit;
+		final CompletableFuture<Record> result = new CompletableFuture<>();
+
+		Write(String statement, Value params, OnCommit onCommit) {
+			this.statement = statement;
+			this.params = params;
+			this.onCommit = onCommit;
+		}
+	}
+
+	private final Driver driver;
+	private final Metrics metrics;
+	private final BlockingQueue<Write> queue;
+	private final int batchSize;
+	private final long lingerNanos;
+	private final long ackTimeoutMs;
+
+	public WriteBehindQueue(Driver driver, Metrics metrics) {
+		this.driver = driver;
+		this.metrics = metrics;
+		this.queue = new ArrayBlockingQueue<>(Settings.getInt("write.queueCapacity", 10000));
+		this.batchSize = Math.max(1, Settings.getInt("write.batchSize", 500));
+		this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Settings.getInt("write.lingerMs", 5));
+		this.ackTimeoutMs = Settings.getInt("write.ackTimeoutMs", 30000);
+
+		Thread writer = new Thread(this::run, "write-behind");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/*
+	 * Queues a single-row write statement and waits until it has committed
+	 * and onCommit has run, returning its row. Throws Busy if the queue is
+	 * full or the commit takes longer than write.ackTimeoutMs.
+	 */
+	public Record write(String statement, Value params, OnCommit onCommit) {
+		Write write = new Write(statement, params, onCommit);
+		if (!queue.offer(write)) {
+			throw new Busy(429, "Write queue full");
+		}
+		try {
+			return write.result.get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new Busy(503, "Write not committed within " + ackTimeoutMs + " ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Busy(503, "Interrupted waiting for write");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+		}
+	}
+
+	public int depth() {
+		return queue.size();
+	}
+
+	private void run() {
+		List<Write> batch = new ArrayList<>(batchSize);
+		while (true) {
+			try {
+				batch.add(queue.take());
+				long deadline = System.nanoTime() + lingerNanos;
+				while (batch.size() < batchSize) {
+					if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+						continue;
+					}
+					Write next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				commit(batch);
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable e) {
+				Log.error("Write-behind batch failed", e);
+				for (Write write : batch) {
+					write.result.completeExceptionally(e);
+				}
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/*
+	 * Commits batch in one transaction, or each write on its own if that
+	 * fails, then runs the hooks and acknowledges in queue order
+	 */
+	private void commit(List<Write> batch) {
+		List<Record> records = null;
+		if (batch.size() > 1) {
+			try (Session session = driver.session(AccessMode.WRITE)) {
+				records = session.writeTransaction(tx -> {
+					List<Record> rows = new ArrayList<>(batch.size());
+					for (Write write : batch) {
+						rows.add(tx.run(write.statement, write.params).single());
+					}
+					return rows;
+				});
+			} catch (Exception e) {
+				Log.warn("Write-behind batch of " + batch.size() + " failed, retrying one by one: " + e);
+			}
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			Write write = batch.get(i);
+			Record record;
+			if (records != null) {
+				record = records.get(i);
+			} else {
+				try (Session session = driver.session(AccessMode.WRITE)) {
+					record = session.writeTransaction(tx -> tx.run(write.statement, write.params).single());
+				} catch (Exception e) {
+					write.result.completeExceptionally(e);
+					continue;
+				}
+			}
+			try {
+				write.onCommit.apply(record);
+			} catch (Exception e) {
+				Log.error("Write-behind commit hook failed", e);
+			}
+			write.result.complete(record);
+		}
+		metrics.writeBatchCommitted(batch.size());
+	}
+}
@@ -0,0 +1,84 @@
+package ca.yorku.eecs.bench;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.yorku.eecs.ActorMovieGraph;
+import ca.yorku.eecs.InMemoryBaconEngine;
+import ca.yorku.eecs.ShortestPathTree;
+
+/*
+ * Bacon number / path computation on SyntheticGraph instances from 10k to
+ * 10M edges, with uniform and power-law degree distributions. nm0 plays
+ * Kevin Bacon; query actors are drawn at random on every call, so the
+ * timings include one id-to-string conversion.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx8g" })
+public class BaconBenchmark {
+
+	@Param({ "10000", "100000", "1000000", "10000000" })
+	public int edges;
+
+	@Param({ "uniform", "powerlaw" })
+	public String distribution;
+
+	private SyntheticGraph synthetic;
+	private ActorMovieGraph graph;
+	private InMemoryBaconEngine engine;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		synthetic = new SyntheticGraph(edges, distribution, 42);
+		graph = synthetic.toGraph();
+		engine = new InMemoryBaconEngine(graph, SyntheticGraph.actorId(0));
+	}
+
+	@Benchmark
+	public int baconNumber() {
+		return engine.baconNumber(randomActor(), SyntheticGraph.actorId(0));
+	}
+
+	@Benchmark
+	public List<String> baconPath() {
+		return engine.baconPath(randomActor(), SyntheticGraph.actorId(0));
+	}
+
+	@Benchmark
+	public List<String> pairwiseBidirectional() {
+		return engine.shortestPath(randomActor(), randomActor());
+	}
+
+	@Benchmark
+	public ShortestPathTree buildTree() {
+		String actorId = randomActor();
+		graph.readLock().lock();
+		try {
+			return ShortestPathTree.build(graph, graph.node(actorId));
+		} finally {
+			graph.readLock().unlock();
+		}
+	}
+
+	private String randomActor() {
+		return SyntheticGraph.actorId(ThreadLocalRandom.current().nextInt(synthetic.actors));
+	}
+}
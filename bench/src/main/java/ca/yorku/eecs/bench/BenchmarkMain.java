@@ -0,0 +1,36 @@
+package ca.yorku.eecs.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Runs the JMH benchmarks and writes the results as JSON so they can be
+ * compared across releases.
+ *
+ *   mvn -q package && java -jar target/benchmarks.jar [jmh options]
+ *
+ * Results go to jmh-result.json unless -rff is given. Any other JMH option
+ * works as usual, e.g. "UtilsBenchmark" to run one class or
+ * "-p edges=10000,100000" to shrink the graph sizes.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()) {
+			// -h and -l only print, exactly as with JMH's own main
+			Main.main(args);
+			return;
+		}
+		Options options = new OptionsBuilder()
+				.parent(commandLine)
+				.resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+				.result(commandLine.getResult().orElse("jmh-result.json"))
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,128 @@
+package ca.yorku.eecs.bench;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.yorku.eecs.IdDictionary;
+import ca.yorku.eecs.Settings;
+
+/*
+ * Id-to-node lookups in the off-heap IdDictionary against the
+ * HashMap<String, Integer> plus String[] that ActorMovieGraph used before,
+ * with SyntheticGraph-style "nm" ids. Run with "-prof gc" to see that
+ * dictionary lookups allocate nothing.
+ *
+ * main() instead reports the memory each layout needs for bench.ids ids
+ * (default 10M): heap used after a full GC, and direct buffer memory.
+ *
+ *   mvn -q exec:java -Dexec.mainClass=ca.yorku.eecs.bench.IdDictionaryBenchmark -Dbench.ids=10000000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx8g" })
+public class IdDictionaryBenchmark {
+
+	@Param({ "100000", "10000000" })
+	public int ids;
+
+	private IdDictionary dictionary;
+	private Map<String, Integer> index;
+	private String[] queries;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		dictionary = new IdDictionary();
+		index = new HashMap<>();
+		for (int i = 0; i < ids; i++) {
+			String id = SyntheticGraph.actorId(i);
+			dictionary.add(id);
+			index.put(id, i);
+		}
+		// fresh String instances, like ids parsed out of a request
+		queries = new String[4096];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = new String(SyntheticGraph.actorId(ThreadLocalRandom.current().nextInt(ids)));
+		}
+	}
+
+	@Benchmark
+	public int dictionaryFind() {
+		return dictionary.find(randomQuery());
+	}
+
+	@Benchmark
+	public Integer hashMapGet() {
+		return index.get(randomQuery());
+	}
+
+	private String randomQuery() {
+		return queries[ThreadLocalRandom.current().nextInt(queries.length)];
+	}
+
+	public static void main(String[] args) {
+		int count = Settings.getInt("bench.ids", 10000000);
+
+		long heapBefore = usedHeap();
+		long directBefore = directMemory();
+		Map<String, Integer> index = new HashMap<>();
+		String[] names = new String[count];
+		for (int i = 0; i < count; i++) {
+			names[i] = SyntheticGraph.actorId(i);
+			index.put(names[i], i);
+		}
+		report("HashMap<String, Integer> + String[]", count, usedHeap() - heapBefore, directMemory() - directBefore);
+		index = null;
+		names = null;
+
+		heapBefore = usedHeap();
+		directBefore = directMemory();
+		IdDictionary dictionary = new IdDictionary();
+		for (int i = 0; i < count; i++) {
+			dictionary.add(SyntheticGraph.actorId(i));
+		}
+		report("IdDictionary", count, usedHeap() - heapBefore, directMemory() - directBefore);
+		System.out.printf("  (dictionary's own estimate: %,d heap bytes, %,d off-heap bytes)\n",
+				dictionary.heapBytes(), dictionary.offHeapBytes());
+	}
+
+	private static void report(String layout, int count, long heap, long direct) {
+		System.out.printf("%-36s %,14d heap bytes (%5.1f per id) %,14d direct bytes (%5.1f per id)\n", layout,
+				heap, heap / (double) count, direct, direct / (double) count);
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static long directMemory() {
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) {
+				return pool.getMemoryUsed();
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,286 @@
+package ca.yorku.eecs.bench;
+
+import java.io.BufferedWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import ca.yorku.eecs.Settings;
+
+/*
+ * Load-test harness for the REST API.
+ *
+ * 1. Generates a power-law SyntheticGraph of load.edges edges (default
+ *    100000), writes it as IMDb-style TSV files and loads them through
+ *    PUT /api/v1/bulkImport (skipped with load.skipImport=true).
+ * 2. Replays a weighted mix of requests at a fixed arrival rate of load.rate
+ *    requests/sec (default 500) for load.seconds (default 30).
+ *
+ * The generator is open-loop: requests are sent on a fixed schedule whether
+ * or not earlier ones have finished, and latency is measured from the
+ * scheduled send time, so a stalled server shows up as latency rather than
+ * as a quietly lower request rate. At most load.maxInFlight operations
+ * (default 10000) are outstanding at once; when the limit is reached the
+ * generator waits for a slot and then catches up on the schedule, and the
+ * wait counts towards those requests' latency (they are reported as sent
+ * late) instead of being left out of the percentiles.
+ *
+ * load.mix sets the weights, e.g. the default
+ *   getActor=30,getMovie=20,hasRelationship=10,computeBaconNumber=25,computeBaconPath=10,add=5
+ * where one "add" operation adds a new actor and a new movie, then once both
+ * have answered links them with addRelationship and gives the actor a new
+ * nationality with addNationality. The later steps are timed from when they
+ * are sent. Latency percentiles (HdrHistogram), throughput and status codes
+ * are printed per endpoint.
+ *
+ * Start the server with -Dbacon.sourceId=nm0 so Bacon queries are rooted at
+ * the synthetic graph's best-connected actor.
+ *
+ *   mvn -q exec:java -Dexec.mainClass=ca.yorku.eecs.bench.LoadTest -Dload.rate=2000
+ */
+public class LoadTest {
+
+	private static final String DEFAULT_MIX = "getActor=30,getMovie=20,hasRelationship=10,computeBaconNumber=25,computeBaconPath=10,add=5";
+
+	private final String baseUrl = Settings.get("load.url", "http://localhost:8080");
+	private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+	private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+	private final AtomicLong addCounter = new AtomicLong();
+	private final Random random = new Random(7);
+	private SyntheticGraph graph;
+
+	public static void main(String[] args) throws Exception {
+		new LoadTest().run();
+	}
+
+	private void run() throws Exception {
+		int edges = Settings.getInt("load.edges", 100000);
+		graph = new SyntheticGraph(edges, Settings.get("load.distribution", "powerlaw"), 42);
+		System.out.printf("Synthetic graph: %d actors, %d movies, %d edges\n", graph.actors, graph.movies, graph.edges);
+
+		if (!Boolean.parseBoolean(Settings.get("load.skipImport", "false"))) {
+			importGraph();
+		}
+
+		replay(parseMix(Settings.get("load.mix", DEFAULT_MIX)), Settings.getInt("load.rate", 500),
+				Settings.getInt("load.seconds", 30), Settings.getInt("load.maxInFlight", 10000));
+		report();
+	}
+
+	/*
+	 * Writes the graph as name.basics / title.basics / title.principals TSV
+	 * files and PUTs each one to the bulk import endpoint
+	 */
+	private void importGraph() throws Exception {
+		Path dir = Files.createTempDirectory("bacon-load");
+		Path actors = dir.resolve("name.basics.tsv");
+		Path movies = dir.resolve("title.basics.tsv");
+		Path principals = dir.resolve("title.principals.tsv");
+
+		try (BufferedWriter out = Files.newBufferedWriter(actors, StandardCharsets.UTF_8)) {
+			out.write("nconst\tprimaryName\n");
+			for (int a = 0; a < graph.actors; a++) {
+				out.write(SyntheticGraph.actorId(a) + "\tActor " + a + "\n");
+			}
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(movies, StandardCharsets.UTF_8)) {
+			out.write("tconst\ttitleType\tprimaryTitle\n");
+			for (int m = 0; m < graph.movies; m++) {
+				out.write(SyntheticGraph.movieId(m) + "\tmovie\tMovie " + m + "\n");
+			}
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(principals, StandardCharsets.UTF_8)) {
+			out.write("tconst\tordering\tnconst\tcategory\n");
+			for (int e = 0; e < graph.edges; e++) {
+				out.write(SyntheticGraph.movieId(graph.edgeMovie(e)) + "\t" + e + "\t"
+						+ SyntheticGraph.actorId(graph.edgeActor(e)) + "\tactor\n");
+			}
+		}
+
+		for (Path file : new Path[] { actors, movies, principals }) {
+			HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/bulkImport"))
+					.PUT(HttpRequest.BodyPublishers.ofFile(file)).build();
+			HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+			System.out.println("Imported " + file.getFileName() + ": " + response.statusCode() + " " + response.body());
+			Files.delete(file);
+		}
+		Files.delete(dir);
+	}
+
+	private void replay(Map<String, Integer> mix, int rate, int seconds, int maxInFlight) {
+		List<String> names = new ArrayList<>(mix.keySet());
+		int[] cumulative = new int[names.size()];
+		int total = 0;
+		for (int i = 0; i < names.size(); i++) {
+			total += mix.get(names.get(i));
+			cumulative[i] = total;
+		}
+
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		long late = 0;
+		long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+		long start = System.nanoTime();
+		long count = (long) rate * seconds;
+		System.out.printf("Replaying %d requests at %d req/s...\n", count, rate);
+
+		for (long i = 0; i < count; i++) {
+			long scheduled = start + i * intervalNanos;
+			long wait = scheduled - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+
+			int pick = random.nextInt(total);
+			int op = 0;
+			while (cumulative[op] <= pick) {
+				op++;
+			}
+
+			// at the limit, wait: latency still runs from the scheduled time
+			if (!inFlight.tryAcquire()) {
+				late++;
+				inFlight.acquireUninterruptibly();
+			}
+			send(names.get(op), scheduled).whenComplete((ignored, error) -> inFlight.release());
+		}
+
+		// wait for stragglers
+		inFlight.acquireUninterruptibly(maxInFlight);
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Done in %.1f s (%d sent late at the in-flight limit)\n", elapsed, late);
+		for (Endpoint endpoint : endpoints.values()) {
+			endpoint.elapsedSeconds = elapsed;
+		}
+	}
+
+	/*
+	 * Sends one operation of the mix; completes when all of its requests
+	 * have answered
+	 */
+	private CompletableFuture<Void> send(String op, long scheduled) {
+		String actor = SyntheticGraph.actorId(random.nextInt(graph.actors));
+		String movie = SyntheticGraph.movieId(random.nextInt(graph.movies));
+
+		switch (op) {
+		case "getActor":
+			return send(get("getActor?actorId=" + actor), scheduled);
+		case "getMovie":
+			return send(get("getMovie?movieId=" + movie), scheduled);
+		case "hasRelationship":
+			return send(get("hasRelationship?actorId=" + actor + "&movieId=" + movie), scheduled);
+		case "computeBaconNumber":
+			return send(get("computeBaconNumber?actorId=" + actor), scheduled);
+		case "computeBaconPath":
+			return send(get("computeBaconPath?actorId=" + actor), scheduled);
+		case "add":
+			long n = addCounter.getAndIncrement();
+			String newActor = "load-a" + n;
+			String newMovie = "load-m" + n;
+			CompletableFuture<Void> actorAdded = send(
+					put("addActor", "{\"actorId\":\"" + newActor + "\",\"name\":\"Load Actor\"}"), scheduled);
+			CompletableFuture<Void> movieAdded = send(
+					put("addMovie", "{\"movieId\":\"" + newMovie + "\",\"name\":\"Load Movie\"}"), scheduled);
+			// the relationship needs both nodes, so it waits for their answers
+			return CompletableFuture.allOf(actorAdded, movieAdded)
+					.thenCompose(ignored -> send(put("addRelationship",
+							"{\"actorId\":\"" + newActor + "\",\"movieId\":\"" + newMovie + "\"}"), System.nanoTime()))
+					.thenCompose(ignored -> send(put("addNationality",
+							"{\"actorId\":\"" + newActor + "\",\"nationality\":\"Load Nation " + n + "\"}"),
+							System.nanoTime()));
+		default:
+			throw new IllegalArgumentException("Unknown operation in load.mix: " + op);
+		}
+	}
+
+	/*
+	 * Sends request and records its latency from start and its status, -1
+	 * for a connection error. The returned future never fails.
+	 */
+	private CompletableFuture<Void> send(HttpRequest request, long start) {
+		Endpoint endpoint = endpoints.computeIfAbsent(endpointName(request), Endpoint::new);
+		return client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).handle((response, error) -> {
+			endpoint.record(System.nanoTime() - start, error == null ? response.statusCode() : -1);
+			return null;
+		});
+	}
+
+	private HttpRequest get(String pathAndQuery) {
+		return HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/" + pathAndQuery)).GET().build();
+	}
+
+	private HttpRequest put(String path, String json) {
+		return HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/" + path))
+				.header("Content-Type", "application/json").PUT(HttpRequest.BodyPublishers.ofString(json)).build();
+	}
+
+	private static String endpointName(HttpRequest request) {
+		String path = request.uri().getPath();
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	private static Map<String, Integer> parseMix(String mix) {
+		Map<String, Integer> weights = new LinkedHashMap<>();
+		for (String entry : mix.split(",")) {
+			String[] parts = entry.trim().split("=");
+			weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+		}
+		return weights;
+	}
+
+	private void report() {
+		System.out.printf("%-20s %8s %9s %9s %9s %9s %9s %9s  %s\n", "endpoint", "count", "req/s", "p50 ms",
+				"p90 ms", "p99 ms", "p99.9 ms", "max ms", "status codes");
+		for (Endpoint endpoint : endpoints.values()) {
+			Histogram h = endpoint.latency;
+			System.out.printf("%-20s %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f  %s\n", endpoint.name,
+					h.getTotalCount(), h.getTotalCount() / endpoint.elapsedSeconds, millis(h.getValueAtPercentile(50)),
+					millis(h.getValueAtPercentile(90)), millis(h.getValueAtPercentile(99)),
+					millis(h.getValueAtPercentile(99.9)), millis(h.getMaxValue()), endpoint.statuses);
+		}
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	private static final class Endpoint {
+		final String name;
+		// nanoseconds up to one minute, 3 significant digits
+		final ConcurrentHistogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+		final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+		double elapsedSeconds;
+
+		Endpoint(String name) {
+			this.name = name;
+		}
+
+		void record(long nanos, int status) {
+			latency.recordValue(Math.min(nanos, latency.getHighestTrackableValue()));
+			status(status);
+		}
+
+		void status(int status) {
+			statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+		}
+	}
+}
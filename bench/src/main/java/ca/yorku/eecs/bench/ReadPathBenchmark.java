@@ -0,0 +1,147 @@
+package ca.yorku.eecs.bench;
+
+import static org.neo4j.driver.v1.Values.parameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResult;
+import org.neo4j.driver.v1.Transaction;
+
+import ca.yorku.eecs.EntityQueries;
+import ca.yorku.eecs.Settings;
+import ca.yorku.eecs.Utils;
+
+/*
+ * Compares the old four-round-trip getActor read path (actorExists, then
+ * name, movies and nationality in separate statements) with the single
+ * EntityQueries.actor statement, against the local Neo4j from Utils.connect().
+ *
+ * Seeds bench.actors actors (default 200) with bench.moviesPerActor movies
+ * each (default 20) under a "bench-" id prefix, runs bench.iterations lookups
+ * (default 5000) per path, and removes the seed data afterwards.
+ *
+ *   mvn -q exec:java -Dexec.mainClass=ca.yorku.eecs.bench.ReadPathBenchmark
+ */
+public class ReadPathBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int actors = Settings.getInt("bench.actors", 200);
+		int moviesPerActor = Settings.getInt("bench.moviesPerActor", 20);
+		int iterations = Settings.getInt("bench.iterations", 5000);
+
+		try (Driver driver = Utils.connect()) {
+			seed(driver, actors, moviesPerActor);
+			try {
+				// warm up both paths before measuring
+				run(driver, actors, iterations / 5, true);
+				run(driver, actors, iterations / 5, false);
+
+				long[] legacy = run(driver, actors, iterations, true);
+				long[] single = run(driver, actors, iterations, false);
+
+				report("legacy (4 round trips)", legacy);
+				report("single query (1 round trip)", single);
+				System.out.printf("mean latency reduced by %.1f%%\n",
+						100.0 * (1 - mean(single) / (double) mean(legacy)));
+			} finally {
+				cleanUp(driver);
+			}
+		}
+	}
+
+	private static long[] run(Driver driver, int actors, int iterations, boolean legacy) throws Exception {
+		long[] nanos = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			String actorId = "bench-a" + (i % actors);
+			long start = System.nanoTime();
+			JSONObject json = legacy ? legacyActor(driver, actorId) : singleActor(driver, actorId);
+			nanos[i] = System.nanoTime() - start;
+			if (json == null) {
+				throw new IllegalStateException("missing " + actorId);
+			}
+		}
+		return nanos;
+	}
+
+	private static JSONObject singleActor(Driver driver, String actorId) throws Exception {
+		try (Session session = driver.session()) {
+			return EntityQueries.actor(session, actorId);
+		}
+	}
+
+	/*
+	 * The read path getActor used before it was collapsed into one statement
+	 */
+	private static JSONObject legacyActor(Driver driver, String actorId) throws Exception {
+		try (Session session = driver.session()) {
+			try (Transaction tx = session.beginTransaction()) {
+				if (!tx.run("MATCH (a:actor) WHERE a.id = $actorId RETURN a", parameters("actorId", actorId))
+						.hasNext()) {
+					return null;
+				}
+			}
+		}
+		try (Session session = driver.session()) {
+			try (Transaction tx = session.beginTransaction()) {
+				StatementResult name = tx.run("MATCH (a:actor {id: $id}) RETURN a.name", parameters("id", actorId));
+				String actorName = name.hasNext() ? name.next().get(0).asString() : "";
+
+				StatementResult movies = tx.run("MATCH (a:actor {id: $x})-[:ACTED_IN]->(movie)\n RETURN movie.id",
+						parameters("x", actorId));
+				List<String> moviesArray = new ArrayList<>();
+				while (movies.hasNext()) {
+					moviesArray.add(movies.next().get(0).asString());
+				}
+
+				StatementResult nationality = tx.run("MATCH (a:actor {id: $id}) RETURN a.nationality",
+						parameters("id", actorId));
+				String actorNationality = nationality.hasNext() ? nationality.next().get(0).asString() : "";
+
+				JSONObject jsonObj = new JSONObject();
+				jsonObj.put("actorId", actorId);
+				jsonObj.put("name", actorName);
+				jsonObj.put("movies", new JSONArray(moviesArray));
+				jsonObj.put("nationality", actorNationality);
+				return jsonObj;
+			}
+		}
+	}
+
+	private static void seed(Driver driver, int actors, int moviesPerActor) {
+		try (Session session = driver.session()) {
+			session.writeTransaction(tx -> tx.run("UNWIND range(0, $n - 1) AS i "
+					+ "MERGE (a:actor {id: 'bench-a' + i}) SET a.name = 'Bench Actor ' + i, a.nationality = 'Bench' "
+					+ "WITH a, i UNWIND range(0, $m - 1) AS j "
+					+ "MERGE (m:movie {id: 'bench-m' + ((i + j) % $n)}) ON CREATE SET m.name = 'Bench Movie' "
+					+ "MERGE (a)-[:ACTED_IN]->(m)", parameters("n", actors, "m", moviesPerActor)).consume());
+		}
+	}
+
+	private static void cleanUp(Driver driver) {
+		try (Session session = driver.session()) {
+			session.writeTransaction(tx -> tx.run(
+					"MATCH (n) WHERE (n:actor OR n:movie) AND n.id STARTS WITH 'bench-' DETACH DELETE n").consume());
+		}
+	}
+
+	private static long mean(long[] nanos) {
+		long total = 0;
+		for (long n : nanos) {
+			total += n;
+		}
+		return total / nanos.length;
+	}
+
+	private static void report(String label, long[] nanos) {
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		System.out.printf("%-28s mean %7.1f us  p50 %7.1f us  p99 %7.1f us\n", label, mean(nanos) / 1000.0,
+				sorted[sorted.length / 2] / 1000.0, sorted[(int) (sorted.length * 0.99)] / 1000.0);
+	}
+}
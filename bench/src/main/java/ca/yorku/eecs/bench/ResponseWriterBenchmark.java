@@ -0,0 +1,76 @@
+package ca.yorku.eecs.bench;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import ca.yorku.eecs.ResponseWriter;
+
+/*
+ * Compares the old sendString (String.getBytes on every response) with
+ * ResponseWriter, which encodes UTF-8 into a pooled per-thread buffer. Run
+ * with the GC profiler to see bytes allocated per response:
+ *
+ *   java -jar target/benchmarks.jar ResponseWriterBenchmark -prof gc
+ *
+ * and compare gc.alloc.rate.norm between the two methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseWriterBenchmark {
+
+	// response length in chars
+	@Param({ "100", "2000", "50000" })
+	public int length;
+
+	// share of non-ASCII chars, like accented names
+	@Param({ "0", "10" })
+	public int nonAsciiPercent;
+
+	private String response;
+	private StubExchange exchange;
+	private final byte[] empty = new byte[0];
+
+	@Setup
+	public void setUp() {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append(i % 100 < nonAsciiPercent ? '\u00e9' : (char) ('a' + i % 26));
+		}
+		response = sb.toString();
+		exchange = new StubExchange("/api/v1/getActor?actorId=nm0000102");
+	}
+
+	@Benchmark
+	public int legacySendString() throws Exception {
+		HttpExchange request = exchange.reset("GET", empty);
+		request.sendResponseHeaders(200, response.length());
+		OutputStream os = request.getResponseBody();
+		os.write(response.getBytes());
+		os.close();
+		return exchange.getResponseCode();
+	}
+
+	@Benchmark
+	public int responseWriter() throws Exception {
+		ResponseWriter.send(exchange.reset("GET", empty), response, 200);
+		return exchange.getResponseCode();
+	}
+}
@@ -0,0 +1,131 @@
+package ca.yorku.eecs.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+/*
+ * In-memory HttpExchange for exercising handler code without a server. The
+ * request body is served from a byte array and the response body is
+ * collected into a reusable buffer.
+ */
+public class StubExchange extends HttpExchange {
+
+	private final Headers requestHeaders = new Headers();
+	private final Headers responseHeaders = new Headers();
+	private final ByteArrayOutputStream response = new ByteArrayOutputStream(4096);
+	private URI uri;
+	private String method = "GET";
+	private InputStream requestBody = new ByteArrayInputStream(new byte[0]);
+	private int responseCode = -1;
+
+	public StubExchange(String uri) {
+		this.uri = URI.create(uri);
+	}
+
+	/*
+	 * Resets the exchange so it can be reused for another request
+	 */
+	public StubExchange reset(String method, byte[] body) {
+		this.method = method;
+		this.requestBody = new ByteArrayInputStream(body);
+		this.response.reset();
+		this.responseHeaders.clear();
+		this.responseCode = -1;
+		return this;
+	}
+
+	public byte[] responseBytes() {
+		return response.toByteArray();
+	}
+
+	@Override
+	public Headers getRequestHeaders() {
+		return requestHeaders;
+	}
+
+	@Override
+	public Headers getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	@Override
+	public URI getRequestURI() {
+		return uri;
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return method;
+	}
+
+	@Override
+	public HttpContext getHttpContext() {
+		return null;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public InputStream getRequestBody() {
+		return requestBody;
+	}
+
+	@Override
+	public OutputStream getResponseBody() {
+		return response;
+	}
+
+	@Override
+	public void sendResponseHeaders(int rCode, long responseLength) {
+		this.responseCode = rCode;
+	}
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return InetSocketAddress.createUnresolved("localhost", 0);
+	}
+
+	@Override
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	@Override
+	public InetSocketAddress getLocalAddress() {
+		return InetSocketAddress.createUnresolved("localhost", 8080);
+	}
+
+	@Override
+	public String getProtocol() {
+		return "HTTP/1.1";
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return null;
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+	}
+
+	@Override
+	public void setStreams(InputStream i, OutputStream o) {
+	}
+
+	@Override
+	public HttpPrincipal getPrincipal() {
+		return null;
+	}
+}
@@ -0,0 +1,93 @@
+package ca.yorku.eecs.bench;
+
+import java.util.Random;
+
+import ca.yorku.eecs.ActorMovieGraph;
+
+/*
+ * Generates synthetic actor/movie graphs of a given size for benchmarks and
+ * load tests.
+ *
+ * There is one actor per four edges and one movie per eight edges, roughly
+ * the ratio of the IMDb principals data. With the "uniform" distribution
+ * every edge joins a uniformly random actor and movie; with "powerlaw" both
+ * endpoints are drawn from a skewed distribution so a few prolific actors
+ * and blockbuster movies collect most of the edges, like the real data.
+ *
+ * Actor ids are "nm" + index and movie ids "tt" + index; actor nm0 has the
+ * highest expected degree, which makes it a good stand-in for Kevin Bacon.
+ * The same seed always gives the same graph.
+ */
+public class SyntheticGraph {
+
+	public final int actors;
+	public final int movies;
+	public final int edges;
+
+	private final int[] edgeActors;
+	private final int[] edgeMovies;
+
+	public SyntheticGraph(int edges, String distribution, long seed) {
+		this.edges = edges;
+		this.actors = Math.max(2, edges / 4);
+		this.movies = Math.max(1, edges / 8);
+		this.edgeActors = new int[edges];
+		this.edgeMovies = new int[edges];
+
+		boolean powerLaw = distribution.equalsIgnoreCase("powerlaw");
+		Random random = new Random(seed);
+		for (int i = 0; i < edges; i++) {
+			edgeActors[i] = powerLaw ? skewed(random, actors) : random.nextInt(actors);
+			edgeMovies[i] = powerLaw ? skewed(random, movies) : random.nextInt(movies);
+		}
+	}
+
+	public static String actorId(int actor) {
+		return "nm" + actor;
+	}
+
+	public static String movieId(int movie) {
+		return "tt" + movie;
+	}
+
+	public int edgeActor(int edge) {
+		return edgeActors[edge];
+	}
+
+	public int edgeMovie(int edge) {
+		return edgeMovies[edge];
+	}
+
+	/*
+	 * Builds the in-memory graph in one bulk load
+	 */
+	public ActorMovieGraph toGraph() {
+		ActorMovieGraph graph = new ActorMovieGraph();
+		int[] actorNodes = new int[actors];
+		int[] movieNodes = new int[movies];
+		for (int a = 0; a < actors; a++) {
+			actorNodes[a] = graph.addActor(actorId(a));
+		}
+		for (int m = 0; m < movies; m++) {
+			movieNodes[m] = graph.addMovie(movieId(m));
+		}
+
+		int[] from = new int[edges];
+		int[] to = new int[edges];
+		for (int i = 0; i < edges; i++) {
+			from[i] = actorNodes[edgeActors[i]];
+			to[i] = movieNodes[edgeMovies[i]];
+		}
+		graph.addEdges(from, to, edges);
+		return graph;
+	}
+
+	/*
+	 * Draws an index in [0, n) with probability falling off roughly as a
+	 * power law, so low indexes are drawn far more often
+	 */
+	private static int skewed(Random random, int n) {
+		double u = random.nextDouble();
+		return (int) Math.min(n - 1, (long) (n * u * u * u));
+	}
+}
@@ -0,0 +1,107 @@
+package ca.yorku.eecs.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.yorku.eecs.Utils;
+
+/*
+ * Micro-benchmarks for the request plumbing in Utils: query parsing, the two
+ * body readers, building a getActor / getMovie response and writing it out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+
+	// number of movies on the actor / actors in the movie
+	@Param({ "10", "100", "1000" })
+	public int listSize;
+
+	private String query;
+	private byte[] body;
+	private List<String> ids;
+	private String response;
+	private StubExchange exchange;
+
+	@Setup
+	public void setUp() {
+		query = "actorId=nm0000102&sourceId=nm0000138";
+		body = "{\"actorId\":\"nm0000102\",\"name\":\"Kevin Bacon\",\"nationality\":\"American\"}"
+				.getBytes(StandardCharsets.UTF_8);
+		ids = new ArrayList<>(listSize);
+		for (int i = 0; i < listSize; i++) {
+			ids.add(String.format("tt%07d", i));
+		}
+		response = actorJson().toString();
+		exchange = new StubExchange("/api/v1/getActor?" + query);
+	}
+
+	@Benchmark
+	public Map<String, String> splitQuery() throws Exception {
+		return Utils.splitQuery(query);
+	}
+
+	@Benchmark
+	public String convert() throws Exception {
+		return Utils.convert(exchange.reset("PUT", body).getRequestBody());
+	}
+
+	@Benchmark
+	public String getBody() throws Exception {
+		return Utils.getBody(exchange.reset("PUT", body));
+	}
+
+	@Benchmark
+	public String serializeActor() throws Exception {
+		return actorJson().toString();
+	}
+
+	@Benchmark
+	public String serializeMovie() throws Exception {
+		JSONObject jsonObj = new JSONObject();
+		jsonObj.put("movieId", "tt0087277");
+		jsonObj.put("name", "Footloose");
+		jsonObj.put("actors", new JSONArray(ids));
+		return jsonObj.toString();
+	}
+
+	@Benchmark
+	public StubExchange sendString() throws Exception {
+		Utils.sendString(exchange.reset("GET", body), response, 200);
+		return exchange;
+	}
+
+	private JSONObject actorJson() {
+		try {
+			JSONObject jsonObj = new JSONObject();
+			jsonObj.put("actorId", "nm0000102");
+			jsonObj.put("name", "Kevin Bacon");
+			jsonObj.put("movies", new JSONArray(ids));
+			jsonObj.put("nationality", "American");
+			return jsonObj;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}